@@ -0,0 +1,249 @@
+package de.formcycle.baybis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Group of equivalent XoevService endpoints (e.g. several AKDB nodes) that requests are spread across.
+ *
+ * <p>Selection uses power-of-two-choices: two random healthy endpoints are compared by their
+ * EWMA latency weighted with the number of requests currently in flight, and the better one wins.
+ * Endpoints that fail {@code failureThreshold} times in a row are taken out for a cooldown period
+ * (doubling on every further failure). Once the cooldown is over they are half-open: a single trial
+ * request is sent to them while all other requests keep going to the healthy endpoints. Its success
+ * (or a successful keep-warm probe) restores the endpoint; its failure takes it out again for the next,
+ * longer cooldown. If every endpoint is down, the one whose cooldown ends first is used anyway, so
+ * requests fail fast against BayBIS instead of in the connector.</p>
+ */
+public class BayBisEndpointGroup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BayBisEndpointGroup.class);
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final Duration DEFAULT_COOLDOWN = Duration.ofSeconds(10);
+    private static final Duration MAX_COOLDOWN = Duration.ofMinutes(5);
+    // Weight of the newest latency sample in the moving average
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final List<Endpoint> endpoints;
+    private final int failureThreshold;
+    private final long baseCooldownNanos;
+    private final LongSupplier nanoClock;
+
+    public BayBisEndpointGroup(List<String> endpointUrls) {
+        this(endpointUrls, DEFAULT_FAILURE_THRESHOLD, DEFAULT_COOLDOWN);
+    }
+
+    /**
+     * @param endpointUrls     XoevService URLs, at least one.
+     * @param failureThreshold Consecutive failures after which an endpoint is taken out.
+     * @param baseCooldown     How long an endpoint stays out after the first ejection.
+     */
+    public BayBisEndpointGroup(List<String> endpointUrls, int failureThreshold, Duration baseCooldown) {
+        this(endpointUrls, failureThreshold, baseCooldown, System::nanoTime);
+    }
+
+    BayBisEndpointGroup(List<String> endpointUrls, int failureThreshold, Duration baseCooldown, LongSupplier nanoClock) {
+        Objects.requireNonNull(endpointUrls, "endpointUrls must not be null");
+        if (endpointUrls.isEmpty()) {
+            throw new BayBisConnectorException("At least one BayBIS endpoint is required", "CONFIG_ERR");
+        }
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        List<Endpoint> list = new ArrayList<>(endpointUrls.size());
+        for (String url : endpointUrls) {
+            list.add(new Endpoint(URI.create(Objects.requireNonNull(url, "endpoint URL must not be null"))));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.failureThreshold = failureThreshold;
+        this.baseCooldownNanos = Objects.requireNonNull(baseCooldown, "baseCooldown must not be null").toNanos();
+        this.nanoClock = Objects.requireNonNull(nanoClock, "nanoClock must not be null");
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public int size() {
+        return endpoints.size();
+    }
+
+    /**
+     * Picks the endpoint for the next request.
+     *
+     * @param exclude Endpoints already tried for this request (failover); may be empty.
+     */
+    Endpoint select(Set<Endpoint> exclude) {
+        long now = nanoClock.getAsLong();
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (exclude.contains(endpoint)) {
+                continue;
+            }
+            if (endpoint.isHealthy()) {
+                candidates.add(endpoint);
+            } else if (endpoint.claimTrial(now)) {
+                LOG.debug("Sending trial request to BayBIS endpoint {}", endpoint);
+                return endpoint;
+            }
+        }
+        if (candidates.isEmpty()) {
+            return fallback(exclude);
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = candidates.get(first);
+        Endpoint b = candidates.get(second);
+        return a.score() <= b.score() ? a : b;
+    }
+
+    // Nothing available: use the endpoint whose ejection ends first (preferring untried ones)
+    private Endpoint fallback(Set<Endpoint> exclude) {
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (exclude.contains(endpoint) && exclude.size() < endpoints.size()) {
+                continue;
+            }
+            if (best == null || endpoint.downUntilNanos - best.downUntilNanos < 0) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A single XoevService URL with its observed latency and health.
+     */
+    public final class Endpoint {
+
+        private final URI uri;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // Set while the single trial request of a half-open endpoint is running
+        private final AtomicBoolean trial = new AtomicBoolean();
+        // Guarded by this
+        private double ewmaNanos;
+        private int consecutiveFailures;
+        private long cooldownNanos;
+        private volatile long downUntilNanos;
+        private volatile boolean down;
+        private volatile long lastRequestNanos;
+        private volatile boolean used;
+
+        private Endpoint(URI uri) {
+            this.uri = uri;
+        }
+
+        public URI getUri() {
+            return uri;
+        }
+
+        /**
+         * @return Smoothed latency of successful requests in milliseconds (0 until the first sample).
+         */
+        public synchronized double getLatencyMillis() {
+            return ewmaNanos / 1_000_000d;
+        }
+
+        public boolean isHealthy() {
+            return !down;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Claims the trial request of an endpoint whose cooldown is over; fails while another one is running.
+         */
+        boolean claimTrial(long now) {
+            return down && now - downUntilNanos >= 0 && trial.compareAndSet(false, true);
+        }
+
+        synchronized double score() {
+            // Unknown latency counts as fast, so new or recovered endpoints get traffic quickly
+            return ewmaNanos * (inFlight.get() + 1);
+        }
+
+        void requestStarted() {
+            inFlight.incrementAndGet();
+        }
+
+        void requestFinished() {
+            lastRequestNanos = nanoClock.getAsLong();
+            used = true;
+            inFlight.decrementAndGet();
+            trial.set(false); // an answer that was neither success nor failure allows another trial
+        }
+
+        /**
+         * @return Whether a regular request finished on this endpoint within the given time
+         *         (or is running right now), i.e. its connections are warm anyway.
+         */
+        boolean hadTrafficWithin(long nanos) {
+            return inFlight.get() > 0 || (used && nanoClock.getAsLong() - lastRequestNanos < nanos);
+        }
+
+        /**
+         * Records a request (or health check) that reached the endpoint and got a regular answer.
+         */
+        public void recordSuccess(long latencyNanos) {
+            boolean recovered;
+            synchronized (this) {
+                ewmaNanos = ewmaNanos == 0 ? latencyNanos : EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * ewmaNanos;
+                consecutiveFailures = 0;
+                cooldownNanos = 0;
+                recovered = down;
+                down = false;
+                trial.set(false);
+            }
+            if (recovered) {
+                LOG.info("BayBIS endpoint recovered: {}", uri);
+            }
+        }
+
+        /**
+         * Records a request (or health check) that failed on transport level or with a gateway error.
+         */
+        public void recordFailure() {
+            long cooldown;
+            int failures;
+            synchronized (this) {
+                failures = ++consecutiveFailures;
+                if (failures < failureThreshold) {
+                    return;
+                }
+                cooldown = cooldownNanos == 0 ? baseCooldownNanos : Math.min(cooldownNanos * 2, MAX_COOLDOWN.toNanos());
+                cooldownNanos = cooldown;
+                downUntilNanos = nanoClock.getAsLong() + cooldown;
+                down = true;
+                trial.set(false);
+            }
+            LOG.warn("BayBIS endpoint taken out for {} ms after {} failure(s): {}", cooldown / 1_000_000, failures, uri);
+        }
+
+        @Override
+        public String toString() {
+            return uri.toString();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package de.formcycle.baybis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional background prober that keeps the connections of a {@link BayBisSoapClient} warm.
+ *
+ * <p>The first search after an idle period pays for DNS, TCP, TLS and a cold server application.
+ * Every {@code interval}, within the configured active hours, the prober fetches the WSDL of each
+ * endpoint that has not served a regular request during the last interval. This goes through the
+ * client's own connection pool, is free of side effects in BayBIS and is not a register access.</p>
+ *
+ * <p>Probe results feed the endpoint statistics of the client's {@link BayBisEndpointGroup}
+ * (latency and health, as for regular requests), so an endpoint that went down during the night is
+ * already taken out when the first user searches. The latest result per endpoint is available via
+ * {@link #getLastResults()}.</p>
+ */
+public class BayBisKeepWarmProber implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BayBisKeepWarmProber.class);
+
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final BayBisSoapClient client;
+    private final Duration interval;
+    private final LocalTime activeFrom;
+    private final LocalTime activeUntil;
+    private final Clock clock;
+    private final Map<BayBisEndpointGroup.Endpoint, ProbeResult> lastResults = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor; // guarded by this
+
+    /**
+     * Prober that is active around the clock.
+     */
+    public BayBisKeepWarmProber(BayBisSoapClient client, Duration interval) {
+        this(client, interval, LocalTime.MIDNIGHT, LocalTime.MIDNIGHT);
+    }
+
+    /**
+     * @param client      Client whose endpoints and connection pool are kept warm.
+     * @param interval    Time between probe rounds; should be below the idle timeout of the
+     *                    connections (load balancer, server), typically one to a few minutes.
+     * @param activeFrom  Start of the active hours (local time of the JVM's default zone).
+     * @param activeUntil End of the active hours, exclusive; may be before {@code activeFrom} to span
+     *                    midnight. Equal to {@code activeFrom} means always active.
+     */
+    public BayBisKeepWarmProber(BayBisSoapClient client, Duration interval, LocalTime activeFrom, LocalTime activeUntil) {
+        this(client, interval, activeFrom, activeUntil, Clock.systemDefaultZone());
+    }
+
+    BayBisKeepWarmProber(BayBisSoapClient client, Duration interval, LocalTime activeFrom, LocalTime activeUntil,
+                         Clock clock) {
+        this.client = Objects.requireNonNull(client, "client must not be null");
+        this.interval = Objects.requireNonNull(interval, "interval must not be null");
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.activeFrom = Objects.requireNonNull(activeFrom, "activeFrom must not be null");
+        this.activeUntil = Objects.requireNonNull(activeUntil, "activeUntil must not be null");
+        this.clock = Objects.requireNonNull(clock, "clock must not be null");
+    }
+
+    /**
+     * Starts probing in the background; the first round runs immediately. Calling it again has no effect.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "baybis-keepwarm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runScheduled, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        LOG.info("BayBIS keep-warm prober started: every {} s, active {}-{}",
+                interval.getSeconds(), activeFrom, activeUntil);
+    }
+
+    /**
+     * Stops probing. A probe in progress is interrupted.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            LOG.info("BayBIS keep-warm prober stopped");
+        }
+    }
+
+    Duration getInterval() {
+        return interval;
+    }
+
+    LocalTime getActiveFrom() {
+        return activeFrom;
+    }
+
+    LocalTime getActiveUntil() {
+        return activeUntil;
+    }
+
+    /**
+     * @return The latest probe result per endpoint (endpoints not probed yet are missing).
+     */
+    public List<ProbeResult> getLastResults() {
+        List<ProbeResult> results = new ArrayList<>();
+        for (BayBisEndpointGroup.Endpoint endpoint : client.getEndpointGroup().getEndpoints()) {
+            ProbeResult result = lastResults.get(endpoint);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    boolean isActive() {
+        if (activeFrom.equals(activeUntil)) {
+            return true;
+        }
+        LocalTime now = LocalTime.now(clock);
+        if (activeFrom.isBefore(activeUntil)) {
+            return !now.isBefore(activeFrom) && now.isBefore(activeUntil);
+        }
+        return !now.isBefore(activeFrom) || now.isBefore(activeUntil);
+    }
+
+    private void runScheduled() {
+        try {
+            if (isActive()) {
+                probeIdleEndpoints();
+            }
+        } catch (RuntimeException e) { // an exception would cancel all further runs
+            LOG.error("Unexpected error in BayBIS keep-warm prober", e);
+        }
+    }
+
+    /**
+     * Probes every endpoint without regular traffic during the last interval.
+     *
+     * @return Number of endpoints probed.
+     */
+    int probeIdleEndpoints() {
+        int probed = 0;
+        for (BayBisEndpointGroup.Endpoint endpoint : client.getEndpointGroup().getEndpoints()) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (endpoint.hadTrafficWithin(interval.toNanos())) {
+                LOG.debug("Skipping keep-warm probe, endpoint in use: {}", endpoint);
+                continue;
+            }
+            probe(endpoint);
+            probed++;
+        }
+        return probed;
+    }
+
+    private void probe(BayBisEndpointGroup.Endpoint endpoint) {
+        long start = System.nanoTime();
+        int statusCode = 0;
+        String error = null;
+        try {
+            statusCode = client.probe(endpoint, PROBE_TIMEOUT);
+            // A 404 or 500 on the WSDL means the service is not deployed or broken, not just a gateway issue
+            if (statusCode < 200 || statusCode >= 300) {
+                error = "HTTP_ERR_" + statusCode;
+            }
+        } catch (IOException e) {
+            error = e.getClass().getSimpleName();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long latencyNanos = System.nanoTime() - start;
+
+        if (error == null) {
+            endpoint.recordSuccess(latencyNanos);
+            LOG.debug("Keep-warm probe of {} answered HTTP {} in {} ms", endpoint, statusCode, latencyNanos / 1_000_000);
+        } else {
+            endpoint.recordFailure();
+            LOG.warn("Keep-warm probe of {} failed: {}", endpoint, error);
+        }
+        lastResults.put(endpoint, new ProbeResult(endpoint.getUri().toString(), clock.instant(),
+                latencyNanos / 1_000_000d, statusCode, error));
+    }
+
+    /**
+     * Outcome of the latest probe of one endpoint.
+     */
+    public static final class ProbeResult {
+        private final String endpoint;
+        private final Instant time;
+        private final double latencyMillis;
+        private final int httpStatus;
+        private final String errorCode;
+
+        private ProbeResult(String endpoint, Instant time, double latencyMillis, int httpStatus, String errorCode) {
+            this.endpoint = endpoint;
+            this.time = time;
+            this.latencyMillis = latencyMillis;
+            this.httpStatus = httpStatus;
+            this.errorCode = errorCode;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public double getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        /**
+         * @return HTTP status, 0 if no response was received.
+         */
+        public int getHttpStatus() {
+            return httpStatus;
+        }
+
+        public boolean isSuccess() {
+            return errorCode == null;
+        }
+
+        /**
+         * @return {@code HTTP_ERR_xxx} for any status other than 2xx or the name of the connection error.
+         */
+        public Optional<String> getErrorCode() {
+            return Optional.ofNullable(errorCode);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s status=%d latency=%.1fms at %s", endpoint,
+                    isSuccess() ? "OK" : errorCode, httpStatus, latencyMillis, time);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package de.formcycle.baybis;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for the time a request waited in {@link BayBisRequestScheduler} before a slot was free.
+ * Its duration is the queue wait; only the authority kennung and counts are recorded.
+ */
+@Name("de.formcycle.baybis.QueueWait")
+@Label("BayBIS Queue Wait")
+@Category({"BayBIS", "Connector"})
+@Description("Wait of a BayBIS request for a free slot of its authority")
+@StackTrace(false)
+class BayBisQueueWaitEvent extends Event {
+
+    @Label("Authority")
+    String authority;
+
+    @Label("Priority")
+    String priority;
+
+    @Label("Weight")
+    @Description("Fair-share weight of the authority")
+    int weight;
+
+    @Label("Queued")
+    @Description("Requests of the authority still waiting after this one")
+    int queued;
+}
@@ -0,0 +1,45 @@
+package de.formcycle.baybis;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one {@link BayBisSoapClient} round trip (including failover attempts).
+ * Carries sizes, status and error code only - never any payload content (PII).
+ */
+@Name("de.formcycle.baybis.Request")
+@Label("BayBIS Request")
+@Category({"BayBIS", "Connector"})
+@Description("SOAP round trip to the BayBIS XoevService")
+@StackTrace(false)
+class BayBisRequestEvent extends Event {
+
+    @Label("Endpoint")
+    @Description("URL of the last endpoint tried")
+    String endpoint;
+
+    @Label("Attempts")
+    int attempts;
+
+    @Label("Payload Size")
+    @Description("XMeld request size before Base64 encoding")
+    @DataAmount
+    long payloadBytes;
+
+    @Label("Response Size")
+    @Description("Decoded XMeld response size")
+    @DataAmount
+    long responseBytes;
+
+    @Label("HTTP Status")
+    int httpStatus;
+
+    @Label("Error Code")
+    @Description("BayBisConnectorException error code, empty on success")
+    String errorCode;
+}
@@ -0,0 +1,603 @@
+package de.formcycle.baybis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Durable store-and-forward queue for XMeld requests.
+ *
+ * <p>{@link #enqueue(byte[])} appends the request to a write-ahead log in the queue directory and
+ * returns as soon as the record is on disk. Concurrent enqueues share one {@code fsync} (group commit).
+ * A pool of worker threads sends the queued requests to BayBIS and hands the responses to the
+ * {@link Listener}. Transient failures (connection errors, timeouts, HTTP 5xx) are retried with
+ * exponential backoff; other failures, including internal errors such as a malformed response, and
+ * requests that still fail after {@code maxAttempts}, are reported via {@link Listener#onFailure}.</p>
+ *
+ * <p>Messages are identified by the {@code nachrichtenUUID} from the XMeld message header. A UUID
+ * that is queued or was completed (the last {@value #COMPLETED_RETENTION} are remembered) is not
+ * queued again, and requests still pending after a restart are resent. A request that was in flight
+ * when the JVM died is sent again with the same UUID and may reach the listener twice, so listeners
+ * should store results keyed by UUID.</p>
+ */
+public class BayBisRequestQueue implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BayBisRequestQueue.class);
+
+    /**
+     * Sends one XMeld request and returns the decoded response, e.g. {@link BayBisSoapClient#sendRequest(byte[])}.
+     */
+    public interface Sender {
+        ByteBuffer send(byte[] xmeldXml);
+    }
+
+    /**
+     * Receives the outcome of queued requests. Called on a worker thread.
+     */
+    public interface Listener {
+        void onResult(String nachrichtenUUID, ByteBuffer xmeldResponse);
+
+        void onFailure(String nachrichtenUUID, BayBisConnectorException error);
+    }
+
+    static final String LOG_FILE = "baybis-queue.wal";
+    static final int COMPLETED_RETENTION = 100_000;
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(2);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(5);
+    private static final int CLOSE_TIMEOUT_SECONDS = 10;
+    // Rewrite the log once it is this large and mostly consists of completed requests
+    private static final long COMPACTION_MIN_BYTES = 8 * 1024 * 1024;
+
+    private static final byte RECORD_ENQUEUED = 1;
+    private static final byte RECORD_COMPLETED = 2;
+    private static final byte RECORD_FAILED = 3;
+    // type, UUID length, payload length, CRC32
+    private static final int RECORD_OVERHEAD = 1 + 2 + 4 + 4;
+
+    private static final byte[] UUID_ELEMENT = "nachrichtenUUID>".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern UUID_PATTERN = Pattern.compile("[0-9a-fA-F]{8}(-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12}");
+
+    private final Path directory;
+    private final Path logFile;
+    private final Sender sender;
+    private final Listener listener;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final ScheduledThreadPoolExecutor workers;
+
+    // Log and queue state, guarded by writeLock. Lock order: syncLock before writeLock.
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private long written;
+    private volatile long synced;
+    private long liveBytes;
+    private final Map<String, byte[]> pending = new LinkedHashMap<>();
+    private final Set<String> completed = new LinkedHashSet<>();
+    private boolean closed;
+    // Set when the log could not be written or forced and its state on disk is unknown
+    private boolean failed;
+
+    /**
+     * @param directory Directory for the write-ahead log; created if missing. Use one directory per queue.
+     * @param workers   Number of requests sent to BayBIS concurrently.
+     */
+    public BayBisRequestQueue(Path directory, Sender sender, Listener listener, int workers) throws IOException {
+        this(directory, sender, listener, workers, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     * @param maxAttempts Attempts per request before it is reported as failed.
+     * @param retryDelay  Delay before the first retry; doubled for every further one (max. 5 minutes).
+     */
+    public BayBisRequestQueue(Path directory, Sender sender, Listener listener, int workers,
+                              int maxAttempts, Duration retryDelay) throws IOException {
+        this.directory = Objects.requireNonNull(directory, "directory must not be null");
+        this.sender = Objects.requireNonNull(sender, "sender must not be null");
+        this.listener = Objects.requireNonNull(listener, "listener must not be null");
+        if (workers < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("workers and maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = Objects.requireNonNull(retryDelay, "retryDelay must not be null").toMillis();
+        this.logFile = directory.resolve(LOG_FILE);
+
+        Files.createDirectories(directory);
+        recover();
+
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = new ScheduledThreadPoolExecutor(workers, r -> {
+            Thread thread = new Thread(r, "baybis-queue-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.workers.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        List<Map.Entry<String, byte[]>> recovered;
+        synchronized (writeLock) {
+            recovered = new ArrayList<>(pending.entrySet());
+        }
+        if (!recovered.isEmpty()) {
+            LOG.info("Resending {} queued BayBIS request(s) from {}", recovered.size(), logFile);
+        }
+        for (Map.Entry<String, byte[]> entry : recovered) {
+            submit(entry.getKey(), entry.getValue(), 1, 0);
+        }
+    }
+
+    /**
+     * Stores the request durably and queues it for sending.
+     *
+     * @return The {@code nachrichtenUUID} of the request.
+     * @throws BayBisConnectorException ({@code INPUT_ERR}) if the request has no valid {@code nachrichtenUUID},
+     *                                  ({@code QUEUE_ERR}) if it cannot be written to disk,
+     *                                  ({@code QUEUE_CLOSED}) after {@link #close()}.
+     *                                  After a failed {@code fsync} the queue accepts no further requests until
+     *                                  it is opened again; the request may then still be resent from the log.
+     */
+    public String enqueue(byte[] xmeldXml) {
+        Objects.requireNonNull(xmeldXml, "xmeldXml must not be null");
+        String uuid = nachrichtenUUID(xmeldXml);
+        byte[] payload = xmeldXml.clone();
+        long end;
+        synchronized (writeLock) {
+            if (closed) {
+                throw new BayBisConnectorException("Request queue is closed", "QUEUE_CLOSED");
+            }
+            if (failed) {
+                throw new BayBisConnectorException("Request queue " + logFile + " could not be written, reopen it",
+                        "QUEUE_ERR");
+            }
+            if (pending.containsKey(uuid) || completed.contains(uuid)) {
+                LOG.info("BayBIS request {} is already queued or completed, ignoring duplicate", uuid);
+                return uuid;
+            }
+            end = append(RECORD_ENQUEUED, uuid, payload);
+            pending.put(uuid, payload);
+            liveBytes += recordSize(uuid, payload.length);
+        }
+        try {
+            sync(end);
+        } catch (BayBisConnectorException e) {
+            // Not accepted, so a retry by the caller must not be taken for a duplicate
+            synchronized (writeLock) {
+                if (pending.remove(uuid) != null) {
+                    liveBytes -= recordSize(uuid, payload.length);
+                }
+            }
+            throw e;
+        }
+        LOG.info("Queued BayBIS request {} ({} bytes)", uuid, payload.length);
+        submit(uuid, payload, 1, 0);
+        return uuid;
+    }
+
+    /**
+     * @return Number of requests not yet completed or failed.
+     */
+    public int getPendingCount() {
+        synchronized (writeLock) {
+            return pending.size();
+        }
+    }
+
+    public boolean isPending(String nachrichtenUUID) {
+        synchronized (writeLock) {
+            return pending.containsKey(nachrichtenUUID);
+        }
+    }
+
+    /**
+     * Stops the workers. Requests waiting for a worker or a retry stay queued and are resent when the
+     * queue is opened again; requests in flight get {@value #CLOSE_TIMEOUT_SECONDS} seconds to complete.
+     */
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // No shutdownNow(): interrupting a thread during a FileChannel operation closes the channel
+        workers.shutdown();
+        try {
+            workers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                try {
+                    channel.force(false);
+                    channel.close();
+                } catch (IOException e) {
+                    LOG.error("Error closing BayBIS request queue {}", logFile, e);
+                }
+            }
+        }
+        LOG.info("BayBIS request queue closed, {} request(s) pending", getPendingCount());
+    }
+
+    /**
+     * Extracts the {@code nachrichtenUUID} from the XMeld message header without parsing the document.
+     */
+    static String nachrichtenUUID(byte[] xml) {
+        int from = 0;
+        while (true) {
+            int match = indexOf(xml, UUID_ELEMENT, from);
+            if (match < 0) {
+                throw new BayBisConnectorException("XMeld request has no nachrichtenUUID", "INPUT_ERR");
+            }
+            from = match + UUID_ELEMENT.length;
+            // Start tag only: "<nachrichtenUUID>" or "<prefix:nachrichtenUUID>"
+            byte before = match > 0 ? xml[match - 1] : 0;
+            if (before == '<' || (before == ':' && !isEndTag(xml, match))) {
+                int end = indexOf(xml, new byte[] {'<'}, from);
+                if (end < 0) {
+                    break;
+                }
+                String uuid = new String(xml, from, end - from, StandardCharsets.US_ASCII).trim();
+                if (!UUID_PATTERN.matcher(uuid).matches()) {
+                    throw new BayBisConnectorException("XMeld request has an invalid nachrichtenUUID", "INPUT_ERR");
+                }
+                return uuid.toLowerCase();
+            }
+        }
+        throw new BayBisConnectorException("XMeld request has no nachrichtenUUID", "INPUT_ERR");
+    }
+
+    private void submit(String uuid, byte[] payload, int attempt, long delayMillis) {
+        try {
+            workers.schedule(() -> process(uuid, payload, attempt), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) { // rejected after close, stays pending
+            LOG.debug("Not scheduling BayBIS request {}, queue is closed", uuid);
+        }
+    }
+
+    private void process(String uuid, byte[] payload, int attempt) {
+        ByteBuffer response;
+        try {
+            LOG.debug("Sending queued BayBIS request {} (attempt {}/{})", uuid, attempt, maxAttempts);
+            response = sender.send(payload);
+        } catch (RuntimeException e) {
+            BayBisConnectorException error = e instanceof BayBisConnectorException
+                    ? (BayBisConnectorException) e
+                    : new BayBisConnectorException("Internal Connector Error: " + e.getMessage(), "INTERNAL_ERR", e);
+            if (isStopped(error)) {
+                LOG.info("Queued BayBIS request {} interrupted, stays queued", uuid);
+                return;
+            }
+            if (isTransient(error) && attempt < maxAttempts) {
+                long delay = retryDelay(attempt);
+                LOG.warn("Queued BayBIS request {} failed ({}), retrying in {} ms", uuid, error.getErrorCode(), delay);
+                submit(uuid, payload, attempt + 1, delay);
+                return;
+            }
+            LOG.error("Queued BayBIS request {} failed after {} attempt(s): {} ({})",
+                    uuid, attempt, error.getMessage(), error.getErrorCode());
+            deliver(uuid, () -> listener.onFailure(uuid, error), RECORD_FAILED, 1);
+            return;
+        }
+        LOG.info("Queued BayBIS request {} completed", uuid);
+        deliver(uuid, () -> listener.onResult(uuid, response.duplicate()), RECORD_COMPLETED, 1);
+    }
+
+    /**
+     * Hands the outcome to the listener and only then marks the request finished: if the JVM dies in between,
+     * the request is resent rather than its result lost. A failing listener gets the same outcome again with
+     * backoff, without asking BayBIS again, until it succeeds or the queue is closed.
+     */
+    private void deliver(String uuid, Runnable callback, byte type, int attempt) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            long delay = retryDelay(attempt);
+            LOG.error("Listener failed for BayBIS request {}, retrying in {} ms", uuid, delay, e);
+            try {
+                workers.schedule(() -> deliver(uuid, callback, type, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException rejected) { // closed, stays pending
+                LOG.debug("Not retrying listener for BayBIS request {}, queue is closed", uuid);
+            }
+            return;
+        }
+        finish(uuid, type);
+    }
+
+    private long retryDelay(int attempt) {
+        return Math.min(retryDelayMillis << Math.min(attempt - 1, 20), MAX_RETRY_DELAY.toMillis());
+    }
+
+    private void finish(String uuid, byte type) {
+        long end;
+        synchronized (writeLock) {
+            if (closed || failed) {
+                return; // stays pending, resent after restart
+            }
+            byte[] payload = pending.remove(uuid);
+            end = append(type, uuid, new byte[0]);
+            liveBytes -= recordSize(uuid, payload != null ? payload.length : 0);
+            remember(uuid);
+        }
+        sync(end);
+        if (needsCompaction()) {
+            synchronized (syncLock) {
+                synchronized (writeLock) {
+                    if (!closed && needsCompaction()) {
+                        compact();
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean needsCompaction() {
+        synchronized (writeLock) {
+            return written > COMPACTION_MIN_BYTES && written > 4 * liveBytes;
+        }
+    }
+
+    private static boolean isTransient(BayBisConnectorException e) {
+        String code = e.getErrorCode();
+        return code == null
+                || code.startsWith("HTTP_ERR_5")
+                || code.equals("CONNECTION_ERR")
+                || code.equals("TIMEOUT_ERR")
+                || code.equals("QUEUE_FULL");
+    }
+
+    private static boolean isStopped(BayBisConnectorException e) {
+        return "INTERRUPTED".equals(e.getErrorCode()) || "SCHEDULER_CLOSED".equals(e.getErrorCode())
+                || Thread.currentThread().isInterrupted();
+    }
+
+    private void remember(String uuid) {
+        completed.add(uuid);
+        liveBytes += recordSize(uuid, 0);
+        if (completed.size() > COMPLETED_RETENTION) {
+            String oldest = completed.iterator().next();
+            completed.remove(oldest);
+            liveBytes -= recordSize(oldest, 0);
+        }
+    }
+
+    // --- Write-ahead log ---
+
+    // Appends a record; the caller holds writeLock and calls sync() after releasing it
+    private long append(byte type, String uuid, byte[] payload) {
+        ByteBuffer record = encode(type, uuid, payload);
+        long start = written;
+        try {
+            while (record.hasRemaining()) {
+                written += channel.write(record);
+            }
+            return written;
+        } catch (IOException e) {
+            LOG.error("Could not write to BayBIS request queue {}", logFile, e);
+            // recover() stops at a torn record, so it must not stay in front of later ones
+            try {
+                channel.truncate(start);
+                written = start;
+            } catch (IOException truncateError) {
+                failed = true;
+                LOG.error("Could not remove torn record from BayBIS request queue {}, no further requests are accepted",
+                        logFile, truncateError);
+            }
+            throw new BayBisConnectorException("Could not write request queue: " + e.getMessage(), "QUEUE_ERR", e);
+        }
+    }
+
+    /**
+     * Makes sure the log is on disk up to {@code position}. Callers arriving while another thread
+     * forces the log wait for it and are usually covered by that single {@code fsync}.
+     */
+    private void sync(long position) {
+        if (synced >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (writeLock) {
+                if (failed) {
+                    throw new BayBisConnectorException("Request queue " + logFile + " could not be written",
+                            "QUEUE_ERR");
+                }
+                target = written;
+                current = channel;
+            }
+            if (!current.isOpen()) {
+                return; // closed; close() forced the log
+            }
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                // After a failed fsync it is unknown which records are on disk, and a retry may falsely succeed
+                synchronized (writeLock) {
+                    failed = true;
+                }
+                LOG.error("Could not sync BayBIS request queue {}, no further requests are accepted", logFile, e);
+                throw new BayBisConnectorException("Could not write request queue: " + e.getMessage(), "QUEUE_ERR", e);
+            }
+            synced = target;
+        }
+    }
+
+    // Reads the log, drops a torn tail from a crash during a write and rewrites it compacted
+    private void recover() throws IOException {
+        if (Files.exists(logFile)) {
+            ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(logFile));
+            int records = 0;
+            while (log.hasRemaining()) {
+                int start = log.position();
+                if (!readRecord(log)) {
+                    LOG.warn("Ignoring incomplete record at offset {} of {} ({} bytes)", start, logFile, log.limit() - start);
+                    break;
+                }
+                records++;
+            }
+            LOG.info("Recovered BayBIS request queue {}: {} record(s), {} pending", logFile, records, pending.size());
+        }
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                compact();
+            }
+        }
+    }
+
+    private boolean readRecord(ByteBuffer log) {
+        int start = log.position();
+        if (log.remaining() < RECORD_OVERHEAD) {
+            return false;
+        }
+        byte type = log.get();
+        int uuidLength = log.getShort() & 0xFFFF;
+        if (log.remaining() < uuidLength + 4) {
+            return false;
+        }
+        byte[] uuidBytes = new byte[uuidLength];
+        log.get(uuidBytes);
+        int payloadLength = log.getInt();
+        if (payloadLength < 0 || log.remaining() < payloadLength + 4) {
+            return false;
+        }
+        byte[] payload = new byte[payloadLength];
+        log.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(log.array(), start, log.position() - start);
+        if ((int) crc.getValue() != log.getInt()) {
+            return false;
+        }
+
+        String uuid = new String(uuidBytes, StandardCharsets.US_ASCII);
+        if (type == RECORD_ENQUEUED) {
+            if (!completed.contains(uuid)) {
+                pending.put(uuid, payload);
+            }
+        } else {
+            pending.remove(uuid);
+            completed.add(uuid);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the log with one holding only pending requests and the remembered completed UUIDs.
+     * The caller holds syncLock and writeLock.
+     */
+    private void compact() {
+        Path tmp = directory.resolve(LOG_FILE + ".tmp");
+        try {
+            while (completed.size() > COMPLETED_RETENTION) {
+                completed.remove(completed.iterator().next());
+            }
+            long size = 0;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (String uuid : completed) {
+                    size += writeFully(out, encode(RECORD_COMPLETED, uuid, new byte[0]));
+                }
+                for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+                    size += writeFully(out, encode(RECORD_ENQUEUED, entry.getKey(), entry.getValue()));
+                }
+                out.force(false);
+            }
+            if (channel != null) {
+                channel.close(); // some platforms cannot replace an open file
+            }
+            IOException moveError = null;
+            try {
+                Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                moveError = e;
+                Files.deleteIfExists(tmp);
+            }
+            // The compacted log, or the unchanged old one if it could not be replaced
+            channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (moveError != null) {
+                throw moveError;
+            }
+            written = size;
+            synced = size;
+            liveBytes = size;
+            LOG.debug("Compacted BayBIS request queue {} to {} bytes", logFile, size);
+        } catch (IOException e) {
+            if (channel != null && !channel.isOpen()) {
+                failed = true;
+            }
+            LOG.error("Could not compact BayBIS request queue {}", logFile, e);
+            throw new BayBisConnectorException("Could not write request queue: " + e.getMessage(), "QUEUE_ERR", e);
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long count = 0;
+        while (buffer.hasRemaining()) {
+            count += channel.write(buffer);
+        }
+        return count;
+    }
+
+    private static ByteBuffer encode(byte type, String uuid, byte[] payload) {
+        byte[] uuidBytes = uuid.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer record = ByteBuffer.allocate(recordSize(uuid, payload.length));
+        record.put(type).putShort((short) uuidBytes.length).put(uuidBytes).putInt(payload.length).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static int recordSize(String uuid, int payloadLength) {
+        return RECORD_OVERHEAD + uuid.length() + payloadLength;
+    }
+
+    private static boolean isEndTag(byte[] xml, int localNameStart) {
+        for (int i = localNameStart - 1; i >= 0; i--) {
+            if (xml[i] == '<') {
+                return i + 1 < xml.length && xml[i + 1] == '/';
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle, int from) {
+        outer:
+        for (int i = from; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,392 @@
+package de.formcycle.baybis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler in front of {@link BayBisSoapClient} for deployments serving several authorities
+ * (tenants, e.g. municipalities identified by their AGS/DBS kennung).
+ *
+ * <ul>
+ *   <li><b>Bulkheads:</b> every tenant has its own concurrency limit and queue, so one tenant's batch
+ *       run cannot occupy all connections to BayBIS.</li>
+ *   <li><b>Fairness:</b> free slots are handed out by weighted fair queueing across tenants
+ *       (virtual finish times, advanced by {@code 1 / weight} per dispatched request).</li>
+ *   <li><b>Priorities:</b> {@link Priority#INTERACTIVE} requests are always dispatched before
+ *       {@link Priority#BULK} requests.</li>
+ * </ul>
+ *
+ * Queue wait times are tracked per tenant: every dispatched request emits a {@link BayBisQueueWaitEvent},
+ * the totals are logged at INFO every {@link #STATS_LOG_INTERVAL} (while requests are dispatched) and are
+ * available via {@link #getStats()}.
+ */
+public class BayBisRequestScheduler implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BayBisRequestScheduler.class);
+
+    public enum Priority { INTERACTIVE, BULK }
+
+    private static final int DEFAULT_TENANT_WEIGHT = 1;
+    private static final int DEFAULT_MAX_QUEUED = 1000;
+    static final Duration STATS_LOG_INTERVAL = Duration.ofMinutes(5);
+
+    private final int maxConcurrent;
+    private final int defaultTenantConcurrency;
+    private final int maxQueuedPerTenant;
+    private final ExecutorService executor;
+
+    // All fields below are guarded by lock
+    private final Object lock = new Object();
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+    private int running;
+    private double virtualTime;
+    private boolean closed;
+    private long nextStatsLogNanos = System.nanoTime() + STATS_LOG_INTERVAL.toNanos();
+
+    /**
+     * @param maxConcurrent            Requests in flight to BayBIS across all tenants.
+     * @param defaultTenantConcurrency Requests in flight per tenant unless registered otherwise.
+     */
+    public BayBisRequestScheduler(int maxConcurrent, int defaultTenantConcurrency) {
+        this(maxConcurrent, defaultTenantConcurrency, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * @param maxQueuedPerTenant Requests a tenant may have waiting; further submissions are rejected.
+     */
+    public BayBisRequestScheduler(int maxConcurrent, int defaultTenantConcurrency, int maxQueuedPerTenant) {
+        if (maxConcurrent < 1 || defaultTenantConcurrency < 1 || maxQueuedPerTenant < 1) {
+            throw new IllegalArgumentException("Scheduler limits must be positive");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.defaultTenantConcurrency = defaultTenantConcurrency;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.executor = Executors.newFixedThreadPool(maxConcurrent, new WorkerThreadFactory());
+    }
+
+    /**
+     * Sets the concurrency limit and fair-share weight for an authority. Unregistered authorities
+     * get the default limit and weight 1 on their first request.
+     */
+    public void registerTenant(String authority, int maxConcurrent, int weight) {
+        Objects.requireNonNull(authority, "authority must not be null");
+        if (maxConcurrent < 1 || weight < 1) {
+            throw new IllegalArgumentException("Tenant limits must be positive");
+        }
+        synchronized (lock) {
+            Tenant tenant = tenants.computeIfAbsent(authority, Tenant::new);
+            tenant.maxConcurrent = maxConcurrent;
+            tenant.weight = weight;
+            dispatch();
+        }
+    }
+
+    /**
+     * Queues a BayBIS call for the given authority.
+     *
+     * @return Future completed with the task's result, or exceptionally with its exception.
+     * @throws BayBisConnectorException ({@code QUEUE_FULL}) if the tenant's queue is full,
+     *                                  ({@code SCHEDULER_CLOSED}) after {@link #close()}.
+     */
+    public <T> CompletableFuture<T> submit(String authority, Priority priority, Callable<T> task) {
+        Objects.requireNonNull(authority, "authority must not be null");
+        Objects.requireNonNull(priority, "priority must not be null");
+        Objects.requireNonNull(task, "task must not be null");
+
+        Job<T> job = new Job<>(task, priority, System.nanoTime());
+        job.event.begin();
+        synchronized (lock) {
+            if (closed) {
+                throw new BayBisConnectorException("Request scheduler is closed", "SCHEDULER_CLOSED");
+            }
+            Tenant tenant = tenants.computeIfAbsent(authority, Tenant::new);
+            if (tenant.queued() >= maxQueuedPerTenant) {
+                tenant.rejected++;
+                LOG.warn("Queue full for authority {}, rejecting {} request", authority, priority);
+                throw new BayBisConnectorException("Too many queued BayBIS requests for " + authority, "QUEUE_FULL");
+            }
+            job.tenant = tenant;
+            tenant.queue(priority).add(job);
+            dispatch();
+        }
+        return job.future;
+    }
+
+    /**
+     * Blocking variant of {@link #submit(String, Priority, Callable)}.
+     */
+    public <T> T execute(String authority, Priority priority, Callable<T> task) {
+        CompletableFuture<T> future = submit(authority, priority, task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new BayBisConnectorException("Request interrupted", "INTERRUPTED", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BayBisConnectorException) {
+                throw (BayBisConnectorException) e.getCause();
+            }
+            throw new BayBisConnectorException("Internal Connector Error: " + e.getCause().getMessage(), "INTERNAL_ERR", e.getCause());
+        }
+    }
+
+    /**
+     * @return Snapshot of queue and wait-time statistics per authority.
+     */
+    public List<TenantStats> getStats() {
+        synchronized (lock) {
+            List<TenantStats> stats = new ArrayList<>(tenants.size());
+            for (Tenant tenant : tenants.values()) {
+                stats.add(new TenantStats(tenant));
+            }
+            return Collections.unmodifiableList(stats);
+        }
+    }
+
+    /**
+     * Stops accepting requests. Queued requests are cancelled, running ones complete.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            for (Tenant tenant : tenants.values()) {
+                cancelAll(tenant.interactive);
+                cancelAll(tenant.bulk);
+            }
+        }
+        executor.shutdown();
+    }
+
+    // Hands free slots to queued jobs: interactive before bulk, lowest virtual finish time first
+    private void dispatch() {
+        while (running < maxConcurrent) {
+            Job<?> job = next(Priority.INTERACTIVE);
+            if (job == null) {
+                job = next(Priority.BULK);
+            }
+            if (job == null) {
+                return;
+            }
+            start(job);
+        }
+    }
+
+    private Job<?> next(Priority priority) {
+        while (true) {
+            Tenant best = null;
+            double bestFinish = Double.MAX_VALUE;
+            for (Tenant tenant : tenants.values()) {
+                if (tenant.running >= tenant.maxConcurrent || tenant.queue(priority).isEmpty()) {
+                    continue;
+                }
+                double finish = Math.max(tenant.finishTag, virtualTime) + 1.0 / tenant.weight;
+                if (finish < bestFinish) {
+                    best = tenant;
+                    bestFinish = finish;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            Job<?> job = best.queue(priority).poll();
+            if (job.future.isDone()) {
+                continue; // cancelled while waiting
+            }
+            virtualTime = Math.max(best.finishTag, virtualTime);
+            best.finishTag = bestFinish;
+            return job;
+        }
+    }
+
+    private void start(Job<?> job) {
+        Tenant tenant = job.tenant;
+        long waitNanos = System.nanoTime() - job.enqueuedNanos;
+        tenant.running++;
+        running++;
+        tenant.dispatched++;
+        tenant.totalWaitNanos += waitNanos;
+        tenant.maxWaitNanos = Math.max(tenant.maxWaitNanos, waitNanos);
+        LOG.debug("Dispatching {} request for authority {} after {} ms in queue",
+                job.priority, tenant.authority, waitNanos / 1_000_000);
+        BayBisQueueWaitEvent event = job.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.authority = tenant.authority;
+            event.priority = job.priority.name();
+            event.weight = tenant.weight;
+            event.queued = tenant.queued();
+            event.commit();
+        }
+        if (System.nanoTime() - nextStatsLogNanos >= 0) {
+            nextStatsLogNanos = System.nanoTime() + STATS_LOG_INTERVAL.toNanos();
+            for (Tenant t : tenants.values()) {
+                LOG.info("BayBIS scheduler {}", new TenantStats(t));
+            }
+        }
+        executor.execute(() -> run(job));
+    }
+
+    private <T> void run(Job<T> job) {
+        try {
+            job.future.complete(job.task.call());
+        } catch (Throwable e) { // must always complete, otherwise the caller waits forever
+            job.future.completeExceptionally(e);
+        } finally {
+            synchronized (lock) {
+                job.tenant.running--;
+                running--;
+                if (!closed) {
+                    dispatch();
+                }
+            }
+        }
+    }
+
+    private static void cancelAll(ArrayDeque<Job<?>> queue) {
+        for (Job<?> job : queue) {
+            job.future.cancel(false);
+        }
+        queue.clear();
+    }
+
+    private final class Tenant {
+        final String authority;
+        final ArrayDeque<Job<?>> interactive = new ArrayDeque<>();
+        final ArrayDeque<Job<?>> bulk = new ArrayDeque<>();
+        int maxConcurrent = defaultTenantConcurrency;
+        int weight = DEFAULT_TENANT_WEIGHT;
+        int running;
+        double finishTag;
+        long dispatched;
+        long rejected;
+        long totalWaitNanos;
+        long maxWaitNanos;
+
+        Tenant(String authority) {
+            this.authority = authority;
+        }
+
+        ArrayDeque<Job<?>> queue(Priority priority) {
+            return priority == Priority.INTERACTIVE ? interactive : bulk;
+        }
+
+        int queued() {
+            return interactive.size() + bulk.size();
+        }
+    }
+
+    private static final class Job<T> {
+        final Callable<T> task;
+        final Priority priority;
+        final long enqueuedNanos;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final BayBisQueueWaitEvent event = new BayBisQueueWaitEvent();
+        Tenant tenant;
+
+        Job(Callable<T> task, Priority priority, long enqueuedNanos) {
+            this.task = task;
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * Queue statistics of one authority at the time of {@link #getStats()}.
+     */
+    public static final class TenantStats {
+        private final String authority;
+        private final int maxConcurrent;
+        private final int weight;
+        private final int queued;
+        private final int running;
+        private final long dispatched;
+        private final long rejected;
+        private final double averageWaitMillis;
+        private final double maxWaitMillis;
+
+        private TenantStats(Tenant tenant) {
+            this.authority = tenant.authority;
+            this.maxConcurrent = tenant.maxConcurrent;
+            this.weight = tenant.weight;
+            this.queued = tenant.queued();
+            this.running = tenant.running;
+            this.dispatched = tenant.dispatched;
+            this.rejected = tenant.rejected;
+            this.averageWaitMillis = tenant.dispatched == 0 ? 0 : tenant.totalWaitNanos / (tenant.dispatched * 1_000_000d);
+            this.maxWaitMillis = tenant.maxWaitNanos / 1_000_000d;
+        }
+
+        public String getAuthority() {
+            return authority;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public long getDispatched() {
+            return dispatched;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public double getAverageWaitMillis() {
+            return averageWaitMillis;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: weight=%d maxConcurrent=%d queued=%d running=%d dispatched=%d rejected=%d "
+                            + "avgWait=%.1fms maxWait=%.1fms",
+                    authority, weight, maxConcurrent, queued, running, dispatched, rejected, averageWaitMillis,
+                    maxWaitMillis);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "baybis-scheduler-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -3,20 +3,34 @@ package de.formcycle.baybis;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * SOAP Client for communicating with the AKDB BayBIS endpoint.
  * Handles Base64 encoding of the request payload and decoding of the response.
+ * Besides the {@code String} API, payloads can be passed as {@code byte[]}, {@link ByteBuffer}
+ * or {@link InputStream}; these variants return the decoded response as raw UTF-8 bytes.
+ *
+ * <p>Requests go to a {@link BayBisEndpointGroup}. With more than one endpoint, a request that provably
+ * did not reach BayBIS (connection could not be established, HTTP 502 or 503) is retried once on every
+ * other endpoint. A 504 or an error after the request was sent is not retried: BayBIS may already have
+ * run the search, and a second attempt would be a second register access.</p>
  */
 public class BayBisSoapClient {
 
@@ -24,18 +38,61 @@ public class BayBisSoapClient {
     
     // Default endpoint - configurable via constructor
     private static final String DEFAULT_ENDPOINT = "https://apk-int.akdb.de/okkommbis/services/XoevService";
+    // Upper bound for one SOAP exchange, so a hung node fails instead of holding the request forever
+    static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
     
-    private final String endpointUrl;
+    // XoevService WSDL specifies namespace urn:akdb:ok.komm:xmeld-service and element xmlParameter
+    private static final byte[] SOAP_ENVELOPE_PREFIX = ascii(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:tns=\"urn:akdb:ok.komm:xmeld-service\">" +
+            "<soapenv:Header/>" +
+            "<soapenv:Body>" +
+            "<tns:callApplicationByte>" +
+            "<tns:xmlParameter>");
+    private static final byte[] SOAP_ENVELOPE_SUFFIX = ascii(
+            "</tns:xmlParameter>" +
+            "</tns:callApplicationByte>" +
+            "</soapenv:Body>" +
+            "</soapenv:Envelope>");
+
+    private static final byte[] RETURN_OPEN = ascii("<callApplicationByteReturn>");
+    private static final byte[] RETURN_CLOSE = ascii("</callApplicationByteReturn>");
+    private static final byte[] FAULT_PREFIXED = ascii(":Fault>");
+    private static final byte[] FAULT_PLAIN = ascii("<Fault>");
+    
+    private final BayBisEndpointGroup endpoints;
+    private final Duration requestTimeout;
     private final HttpClient httpClient;
 
     public BayBisSoapClient(String endpointUrl) {
-        this.endpointUrl = Objects.requireNonNullElse(endpointUrl, DEFAULT_ENDPOINT);
+        this(new BayBisEndpointGroup(List.of(Objects.requireNonNullElse(endpointUrl, DEFAULT_ENDPOINT))));
+    }
+
+    public BayBisSoapClient(BayBisEndpointGroup endpoints) {
+        this(endpoints, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @param requestTimeout Maximum time from sending a request until the response is received.
+     *                       A request that times out fails with {@code TIMEOUT_ERR} and counts as a
+     *                       failure of the endpoint.
+     */
+    public BayBisSoapClient(BayBisEndpointGroup endpoints, Duration requestTimeout) {
+        this.endpoints = Objects.requireNonNull(endpoints, "endpoints must not be null");
+        this.requestTimeout = Objects.requireNonNull(requestTimeout, "requestTimeout must not be null");
+        if (requestTimeout.isNegative() || requestTimeout.isZero()) {
+            throw new IllegalArgumentException("requestTimeout must be positive");
+        }
         this.httpClient = HttpClient.newBuilder()
                 .version(HttpClient.Version.HTTP_1_1)
                 .connectTimeout(Duration.ofSeconds(30))
                 .build();
     }
 
+    public BayBisEndpointGroup getEndpointGroup() {
+        return endpoints;
+    }
+
     /**
      * Sends a raw XMeld XML string to BayBIS.
      * 
@@ -45,102 +102,306 @@ public class BayBisSoapClient {
      */
     public String sendRequest(String xmeldXml) {
         Objects.requireNonNull(xmeldXml, "xmeldXml must not be null");
+        ByteBuffer decoded = exchange(ByteBuffer.wrap(xmeldXml.getBytes(StandardCharsets.UTF_8)));
+        return StandardCharsets.UTF_8.decode(decoded).toString();
+    }
 
+    /**
+     * Sends raw XMeld XML bytes (UTF-8) to BayBIS.
+     *
+     * @param xmeldXml The raw XMeld 1332 XML content.
+     * @return The decoded XMeld 1333 response bytes, ready for {@link XMeldResponseParser#parseResponse(ByteBuffer)}.
+     * @throws BayBisConnectorException if the request fails or SOAP Fault occurs.
+     */
+    public ByteBuffer sendRequest(byte[] xmeldXml) {
+        Objects.requireNonNull(xmeldXml, "xmeldXml must not be null");
+        return exchange(ByteBuffer.wrap(xmeldXml));
+    }
+
+    /**
+     * Sends raw XMeld XML bytes (UTF-8) to BayBIS. The position of the given buffer is not modified.
+     *
+     * @param xmeldXml The raw XMeld 1332 XML content.
+     * @return The decoded XMeld 1333 response bytes.
+     * @throws BayBisConnectorException if the request fails or SOAP Fault occurs.
+     */
+    public ByteBuffer sendRequest(ByteBuffer xmeldXml) {
+        Objects.requireNonNull(xmeldXml, "xmeldXml must not be null");
+        return exchange(xmeldXml.duplicate());
+    }
+
+    /**
+     * Sends raw XMeld XML (UTF-8) read from the given stream to BayBIS. The stream is read fully but not closed.
+     *
+     * @param xmeldXml Stream with the raw XMeld 1332 XML content.
+     * @return The decoded XMeld 1333 response bytes.
+     * @throws BayBisConnectorException if the stream cannot be read, the request fails or SOAP Fault occurs.
+     */
+    public ByteBuffer sendRequest(InputStream xmeldXml) {
+        Objects.requireNonNull(xmeldXml, "xmeldXml must not be null");
+        try {
+            return exchange(ByteBuffer.wrap(xmeldXml.readAllBytes()));
+        } catch (IOException e) {
+            LOG.error("Failed to read XMeld input stream", e);
+            throw new BayBisConnectorException("Could not read XMeld input: " + e.getMessage(), "INPUT_ERR", e);
+        }
+    }
+
+    /**
+     * Same as {@link #sendRequest(byte[])}, but exposes the decoded response as a stream.
+     */
+    public InputStream sendRequestAsStream(byte[] xmeldXml) {
+        return new ByteBufferInputStream(sendRequest(xmeldXml));
+    }
+
+    /**
+     * Same as {@link #sendRequest(ByteBuffer)}, but exposes the decoded response as a stream.
+     */
+    public InputStream sendRequestAsStream(ByteBuffer xmeldXml) {
+        return new ByteBufferInputStream(sendRequest(xmeldXml));
+    }
+
+    /**
+     * Same as {@link #sendRequest(InputStream)}, but exposes the decoded response as a stream.
+     */
+    public InputStream sendRequestAsStream(InputStream xmeldXml) {
+        return new ByteBufferInputStream(sendRequest(xmeldXml));
+    }
+
+    /**
+     * Performs the SOAP round trip on raw bytes. Neither the payload nor the response is decoded
+     * to characters here; UTF-8 decoding is left to the caller (or the XML parser).
+     */
+    private ByteBuffer exchange(ByteBuffer payload) {
         LOG.info("=== BayBIS Request Start ===");
-        LOG.info("Endpoint: {}", endpointUrl);
-        LOG.debug("Input XML (masked): {}", maskPII(xmeldXml));
-        
+        LOG.info("Endpoints: {}", endpoints.getEndpoints());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Input XML (masked): {}", maskPII(StandardCharsets.UTF_8.decode(payload.duplicate()).toString()));
+        }
+
+        BayBisRequestEvent event = new BayBisRequestEvent();
+        event.begin();
+        event.payloadBytes = payload.remaining();
         try {
             // 1. Base64 Encode
-            String base64Payload = Base64.getEncoder().encodeToString(xmeldXml.getBytes(StandardCharsets.UTF_8));
-            LOG.debug("Base64 encoded payload length: {}", base64Payload.length());
+            byte[] base64Payload = toByteArray(Base64.getEncoder().encode(payload));
+            LOG.debug("Base64 encoded payload length: {}", base64Payload.length);
 
-            // 2. Wrap in SOAP Envelope (callApplicationByte)
-            String soapRequest = createSoapEnvelope(base64Payload);
+            // 2. Wrap in SOAP Envelope (callApplicationByte) without copying the payload
+            HttpRequest.BodyPublisher soapRequest = HttpRequest.BodyPublishers.ofByteArrays(
+                    List.of(SOAP_ENVELOPE_PREFIX, base64Payload, SOAP_ENVELOPE_SUFFIX));
             LOG.debug("Generated SOAP Envelope.");
 
-            // 3. Send HTTP Request
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(endpointUrl))
-                    .header("Content-Type", "text/xml; charset=utf-8")
-                    .header("SOAPAction", "\"\"") // Usually empty or specific action
-                    .POST(HttpRequest.BodyPublishers.ofString(soapRequest, StandardCharsets.UTF_8))
-                    .build();
-
-            LOG.info("Sending SOAP request to: {}", endpointUrl);
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            // 3. Send HTTP Request (with failover across the endpoint group)
+            HttpResponse<byte[]> response = sendWithFailover(soapRequest, event);
 
             int statusCode = response.statusCode();
+            event.httpStatus = statusCode;
             LOG.info("Received response with status code: {}", statusCode);
 
+            byte[] responseBody = response.body();
+
             if (statusCode != 200) {
-                LOG.error("HTTP Error: {}", response.body());
+                LOG.error("HTTP Error: {}", new String(responseBody, StandardCharsets.UTF_8));
                 throw new BayBisConnectorException("HTTP Error " + statusCode, "HTTP_ERR_" + statusCode);
             }
-
-            String responseBody = response.body();
             
             // 4. Check for SOAP Faults
-            if (responseBody.contains(":Fault>") || responseBody.contains("<Fault>")) {
+            if (indexOf(responseBody, FAULT_PREFIXED, 0) >= 0 || indexOf(responseBody, FAULT_PLAIN, 0) >= 0) {
                 LOG.error("SOAP Fault detected.");
                 // In a real implementation, parse the fault details.
                 throw new BayBisConnectorException("SOAP Fault received from BayBIS", "SOAP_FAULT");
             }
 
             // 5. Extract and Decode Response
-            String base64Response = extractBase64Response(responseBody);
-            LOG.debug("Extracted Base64 response, length: {}", base64Response.length());
-            
-            byte[] decodedBytes = Base64.getDecoder().decode(base64Response);
-            String decodedXml = new String(decodedBytes, StandardCharsets.UTF_8);
+            ByteBuffer base64Response = extractBase64Response(responseBody);
+            LOG.debug("Extracted Base64 response, length: {}", base64Response.remaining());
             
-            LOG.info("Successfully decoded response XML. Length: {} bytes", decodedXml.length());
-            LOG.debug("Response XML (masked): {}", maskPII(decodedXml));
+            ByteBuffer decoded = Base64.getDecoder().decode(base64Response);
+            event.responseBytes = decoded.remaining();
+
+            LOG.info("Successfully decoded response XML. Length: {} bytes", decoded.remaining());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Response XML (masked): {}", maskPII(StandardCharsets.UTF_8.decode(decoded.duplicate()).toString()));
+            }
             LOG.info("=== BayBIS Request Complete ===");
             
-            return decodedXml;
+            return decoded;
 
         } catch (BayBisConnectorException e) {
             LOG.error("BayBIS Connector Exception: {}", e.getMessage());
+            event.errorCode = e.getErrorCode();
             throw e;
+        } catch (HttpTimeoutException e) {
+            LOG.error("BayBIS request timed out: {}", e.getMessage());
+            event.errorCode = "TIMEOUT_ERR";
+            throw new BayBisConnectorException("Request timed out: " + e.getMessage(), "TIMEOUT_ERR", e);
+        } catch (IOException e) {
+            LOG.error("BayBIS request failed: {}", e.getMessage());
+            event.errorCode = "CONNECTION_ERR";
+            throw new BayBisConnectorException("Connection Error: " + e.getMessage(), "CONNECTION_ERR", e);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            event.errorCode = "INTERRUPTED";
             throw new BayBisConnectorException("Request interrupted", "INTERRUPTED", e);
         } catch (Exception e) {
             LOG.error("Unexpected error during BayBIS request", e);
+            event.errorCode = "INTERNAL_ERR";
             throw new BayBisConnectorException("Internal Connector Error: " + e.getMessage(), "INTERNAL_ERR", e);
+        } finally {
+            // Only sizes, status and codes are recorded, never content (see BayBisRequestEvent)
+            event.commit();
         }
     }
 
-    private String createSoapEnvelope(String base64Payload) {
-        // XoevService WSDL specifies namespace urn:akdb:ok.komm:xmeld-service and element xmlParameter
-        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
-               "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:tns=\"urn:akdb:ok.komm:xmeld-service\">" +
-               "<soapenv:Header/>" +
-               "<soapenv:Body>" +
-               "<tns:callApplicationByte>" +
-               "<tns:xmlParameter>" + base64Payload + "</tns:xmlParameter>" +
-               "</tns:callApplicationByte>" +
-               "</soapenv:Body>" +
-               "</soapenv:Envelope>";
+    /**
+     * Sends the request to the best endpoint of the group. Connection errors and gateway statuses
+     * mark the endpoint as failed. Only if the request was not delivered ({@link #isUndelivered}) does
+     * it move on to the next untried endpoint; anything else is returned or thrown.
+     */
+    private HttpResponse<byte[]> sendWithFailover(HttpRequest.BodyPublisher soapRequest, BayBisRequestEvent event)
+            throws IOException, InterruptedException {
+        Set<BayBisEndpointGroup.Endpoint> tried = new HashSet<>();
+        IOException lastError = null;
+        HttpResponse<byte[]> lastResponse = null;
+
+        for (int attempt = 0; attempt < endpoints.size(); attempt++) {
+            BayBisEndpointGroup.Endpoint endpoint = endpoints.select(tried);
+            tried.add(endpoint);
+            event.endpoint = endpoint.toString();
+            event.attempts = attempt + 1;
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(endpoint.getUri())
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "text/xml; charset=utf-8")
+                    .header("SOAPAction", "\"\"") // Usually empty or specific action
+                    .POST(soapRequest)
+                    .build();
+
+            LOG.info("Sending SOAP request to: {}", endpoint);
+            long start = System.nanoTime();
+            endpoint.requestStarted();
+            try {
+                HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                if (!isGatewayError(response.statusCode())) {
+                    endpoint.recordSuccess(System.nanoTime() - start);
+                    return response;
+                }
+                LOG.warn("Endpoint {} answered with HTTP {}", endpoint, response.statusCode());
+                endpoint.recordFailure();
+                if (!isUndelivered(response.statusCode())) {
+                    return response; // 504: the search may have run, no second attempt
+                }
+                lastResponse = response;
+                lastError = null;
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                LOG.warn("Could not connect to endpoint {}: {}", endpoint, e.getMessage());
+                endpoint.recordFailure();
+                lastError = e;
+                lastResponse = null;
+            } catch (IOException e) {
+                // Sent, but no (complete) answer: the search may have run, no second attempt
+                LOG.warn("Request to endpoint {} failed: {}", endpoint, e.getMessage());
+                endpoint.recordFailure();
+                throw e;
+            } finally {
+                endpoint.requestFinished();
+            }
+        }
+
+        if (lastResponse != null) {
+            return lastResponse; // reported as HTTP error by the caller
+        }
+        throw lastError;
     }
 
-    private String extractBase64Response(String soapResponse) {
+    /**
+     * Fetches the WSDL of the endpoint through the same {@link HttpClient} (and thus the same
+     * connection pool and TLS sessions) as regular requests. Reading the WSDL has no side effects
+     * in BayBIS and creates no register access. Used by {@link BayBisKeepWarmProber}.
+     *
+     * @return The HTTP status code; anything but 2xx means the endpoint is not serving.
+     */
+    int probe(BayBisEndpointGroup.Endpoint endpoint, Duration timeout) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(wsdlUri(endpoint.getUri()))
+                .timeout(timeout)
+                .GET()
+                .build();
+        // The body has to be consumed for the connection to go back into the pool
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * Appends the {@code wsdl} parameter, also to endpoints that already have a query string.
+     */
+    static URI wsdlUri(URI endpoint) {
+        String uri = endpoint.toString();
+        int fragment = uri.indexOf('#');
+        if (fragment >= 0) {
+            uri = uri.substring(0, fragment);
+        }
+        return URI.create(uri + (endpoint.getRawQuery() == null ? "?wsdl" : "&wsdl"));
+    }
+
+    static boolean isGatewayError(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * 502 and 503 come from a gateway (or server) that did not pass the request on. A 504 means the
+     * gateway gave up waiting for an answer, so BayBIS may still have processed the request.
+     */
+    static boolean isUndelivered(int statusCode) {
+        return statusCode == 502 || statusCode == 503;
+    }
+
+    private ByteBuffer extractBase64Response(byte[] soapResponse) {
         // Extract callApplicationByteReturn element as per XoevService WSDL
         // Expected: <callApplicationByteReturn>BASE64...</callApplicationByteReturn>
-        Pattern pattern = Pattern.compile("<callApplicationByteReturn>([^<]+)</callApplicationByteReturn>");
-        Matcher matcher = pattern.matcher(soapResponse);
+        int open = indexOf(soapResponse, RETURN_OPEN, 0);
+        int start = open + RETURN_OPEN.length;
+        int end = open >= 0 ? indexOf(soapResponse, RETURN_CLOSE, start) : -1;
         
-        if (matcher.find()) {
-            return matcher.group(1);
+        if (end > start) {
+            return ByteBuffer.wrap(soapResponse, start, end - start);
         } else {
             // Fallback: sometimes namespaces or different tag names might be used depending on the WSDL.
             // We might need to adjust this based on the actual response trace.
             LOG.error("Could not find <callApplicationByteReturn> block in SOAP response.");
-            LOG.debug("Full Response: {}", soapResponse);
+            LOG.debug("Full Response: {}", new String(soapResponse, StandardCharsets.UTF_8));
             throw new BayBisConnectorException("Invalid SOAP Response: Missing return content", "INVALID_RESP");
         }
     }
+
+    // Byte-level search for ASCII markers, avoids decoding the SOAP response to a String
+    private static int indexOf(byte[] haystack, byte[] needle, int from) {
+        outer:
+        for (int i = from; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
     
     /**
      * Masks PII (Personally Identifiable Information) in XML for logging.
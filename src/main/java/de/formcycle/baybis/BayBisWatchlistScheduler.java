@@ -0,0 +1,508 @@
+package de.formcycle.baybis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic re-checks of a watchlist of persons, e.g. to notice that someone has moved
+ * ({@code verzogen}) or got a new ID document.
+ *
+ * <p>Every watched entry is re-checked once per {@code recheckInterval}, only within the configured
+ * off-peak window. The checks of one window are spread over it: each {@link #TICK} runs at most
+ * {@code watched * TICK / window} due checks, one after the other, so the watchlist does not hit
+ * BayBIS as a burst.</p>
+ *
+ * <p>The scheduler does not keep search criteria or hits. The {@link Checker} runs the search for an
+ * entry ID, and only two 64-bit keys per returned hit are stored ({@link XMeldHitFingerprint}: who it
+ * is and what was returned). The {@link Listener} is called only if a re-check differs from the
+ * previous one, so downstream work scales with the number of changes, not with the watchlist. The
+ * first check of an entry records the baseline without an event, unless one is passed to
+ * {@link #watch(String, XMeldResult)}. State is kept in memory only.</p>
+ */
+public class BayBisWatchlistScheduler implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BayBisWatchlistScheduler.class);
+
+    /**
+     * Runs the re-check search for a watchlist entry. Called on the scheduler thread.
+     */
+    public interface Checker {
+        XMeldResult check(String entryId);
+    }
+
+    /**
+     * Receives changed re-check results. Called on the scheduler thread.
+     */
+    public interface Listener {
+        void onChange(Change change);
+    }
+
+    static final Duration TICK = Duration.ofMinutes(1);
+    // Failed checks are retried after this delay (or the recheck interval, if shorter)
+    static final Duration RETRY_DELAY = Duration.ofMinutes(15);
+
+    private final Checker checker;
+    private final Listener listener;
+    private final Duration recheckInterval;
+    private final LocalTime windowFrom;
+    private final LocalTime windowUntil;
+    private final Clock clock;
+
+    // All fields below are guarded by lock
+    private final Object lock = new Object();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final PriorityQueue<Entry> due = new PriorityQueue<>(
+            Comparator.comparing((Entry entry) -> entry.nextDue).thenComparingLong(entry -> entry.sequence));
+    private long sequence;
+    private long checkCount;
+    private long changeCount;
+    private long failureCount;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param checker         Runs the search for an entry, typically an XMeld 1332 request built from
+     *                        the caller's own record of the person.
+     * @param listener        Receives the entries whose result changed.
+     * @param recheckInterval How often each entry is re-checked, e.g. one day.
+     * @param windowFrom      Start of the off-peak window (local time of the JVM's default zone).
+     * @param windowUntil     End of the off-peak window, exclusive; may be before {@code windowFrom} to
+     *                        span midnight. Equal to {@code windowFrom} means around the clock.
+     */
+    public BayBisWatchlistScheduler(Checker checker, Listener listener, Duration recheckInterval,
+                                    LocalTime windowFrom, LocalTime windowUntil) {
+        this(checker, listener, recheckInterval, windowFrom, windowUntil, Clock.systemDefaultZone());
+    }
+
+    BayBisWatchlistScheduler(Checker checker, Listener listener, Duration recheckInterval,
+                             LocalTime windowFrom, LocalTime windowUntil, Clock clock) {
+        this.checker = Objects.requireNonNull(checker, "checker must not be null");
+        this.listener = Objects.requireNonNull(listener, "listener must not be null");
+        this.recheckInterval = Objects.requireNonNull(recheckInterval, "recheckInterval must not be null");
+        if (recheckInterval.compareTo(TICK) < 0) {
+            throw new IllegalArgumentException("recheckInterval must be at least " + TICK.toMinutes() + " minute");
+        }
+        this.windowFrom = Objects.requireNonNull(windowFrom, "windowFrom must not be null");
+        this.windowUntil = Objects.requireNonNull(windowUntil, "windowUntil must not be null");
+        this.clock = Objects.requireNonNull(clock, "clock must not be null");
+    }
+
+    /**
+     * Adds an entry; its first check records the baseline. Watching an entry again resets it.
+     */
+    public void watch(String entryId) {
+        add(new Entry(Objects.requireNonNull(entryId, "entryId must not be null")), clock.instant());
+    }
+
+    /**
+     * Adds an entry with the result of the search it was created from, so the first re-check, after
+     * {@code recheckInterval}, already reports changes.
+     *
+     * @throws IllegalArgumentException if the baseline is an error result.
+     */
+    public void watch(String entryId, XMeldResult baseline) {
+        Objects.requireNonNull(baseline, "baseline must not be null");
+        if (baseline.getStatus() != XMeldResult.Status.SUCCESS) {
+            throw new IllegalArgumentException("baseline must be a successful result");
+        }
+        Entry entry = new Entry(Objects.requireNonNull(entryId, "entryId must not be null"));
+        entry.fingerprints = Fingerprints.of(baseline.getTreffer());
+        add(entry, clock.instant().plus(recheckInterval));
+    }
+
+    private void add(Entry entry, Instant nextDue) {
+        synchronized (lock) {
+            Entry previous = entries.put(entry.id, entry);
+            if (previous != null) {
+                due.remove(previous);
+            }
+            entry.nextDue = nextDue;
+            entry.sequence = sequence++;
+            due.add(entry);
+        }
+    }
+
+    /**
+     * Removes an entry and its fingerprints. A check in progress is discarded.
+     *
+     * @return Whether the entry was watched.
+     */
+    public boolean unwatch(String entryId) {
+        synchronized (lock) {
+            Entry entry = entries.remove(entryId);
+            if (entry == null) {
+                return false;
+            }
+            due.remove(entry);
+            return true;
+        }
+    }
+
+    public int getWatchedCount() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return Completed re-checks, including the ones recording a baseline.
+     */
+    public long getCheckCount() {
+        synchronized (lock) {
+            return checkCount;
+        }
+    }
+
+    /**
+     * @return Re-checks that reported a change.
+     */
+    public long getChangeCount() {
+        synchronized (lock) {
+            return changeCount;
+        }
+    }
+
+    /**
+     * @return Re-checks that failed (exception or error result) and were rescheduled.
+     */
+    public long getFailureCount() {
+        synchronized (lock) {
+            return failureCount;
+        }
+    }
+
+    /**
+     * Starts re-checking in the background. Calling it again has no effect.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (executor != null) {
+                return;
+            }
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "baybis-watchlist");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::runScheduled, 0, TICK.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        LOG.info("BayBIS watchlist started: recheck every {} min, window {}-{}",
+                recheckInterval.toMinutes(), windowFrom, windowUntil);
+    }
+
+    /**
+     * Stops re-checking. A check in progress is interrupted and retried after a restart.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (executor == null) {
+                return;
+            }
+            executor.shutdownNow();
+            executor = null;
+        }
+        LOG.info("BayBIS watchlist stopped");
+    }
+
+    boolean isActive() {
+        if (windowFrom.equals(windowUntil)) {
+            return true;
+        }
+        LocalTime now = LocalTime.now(clock);
+        if (windowFrom.isBefore(windowUntil)) {
+            return !now.isBefore(windowFrom) && now.isBefore(windowUntil);
+        }
+        return !now.isBefore(windowFrom) || now.isBefore(windowUntil);
+    }
+
+    /**
+     * @return Checks allowed per tick, so that all entries fit into one window (or interval, if shorter).
+     */
+    int checkBudget() {
+        Duration window = windowFrom.equals(windowUntil)
+                ? Duration.ofDays(1)
+                : Duration.between(windowFrom, windowUntil);
+        if (window.isNegative()) {
+            window = window.plusDays(1);
+        }
+        long spanTicks = Math.max(1, Math.min(window.toMillis(), recheckInterval.toMillis()) / TICK.toMillis());
+        int watched;
+        synchronized (lock) {
+            watched = entries.size();
+        }
+        return (int) Math.max(1, (watched + spanTicks - 1) / spanTicks);
+    }
+
+    private void runScheduled() {
+        try {
+            if (isActive()) {
+                runDueChecks();
+            }
+        } catch (RuntimeException e) { // an exception would cancel all further runs
+            LOG.error("Unexpected error in BayBIS watchlist", e);
+        }
+    }
+
+    /**
+     * Runs the due checks of one tick, oldest first, up to the {@link #checkBudget()}.
+     *
+     * @return Number of entries checked.
+     */
+    int runDueChecks() {
+        int budget = checkBudget();
+        int checked = 0;
+        while (checked < budget && !Thread.currentThread().isInterrupted()) {
+            Entry entry;
+            synchronized (lock) {
+                entry = due.peek();
+                if (entry == null || entry.nextDue.isAfter(clock.instant())) {
+                    break;
+                }
+                due.poll();
+            }
+            check(entry);
+            checked++;
+        }
+        return checked;
+    }
+
+    private void check(Entry entry) {
+        Instant checkedAt = clock.instant();
+        XMeldResult result;
+        try {
+            result = checker.check(entry.id);
+        } catch (BayBisConnectorException e) {
+            failed(entry, checkedAt, e.getErrorCode());
+            return;
+        } catch (RuntimeException e) {
+            LOG.error("Watchlist check of entry {} failed", entry.id, e);
+            failed(entry, checkedAt, e.getClass().getSimpleName());
+            return;
+        }
+        if (result.getStatus() != XMeldResult.Status.SUCCESS) {
+            failed(entry, checkedAt, result.getError().map(XMeldError::getCode).orElse("XMELD_ERR"));
+            return;
+        }
+
+        Fingerprints fingerprints = Fingerprints.of(result.getTreffer());
+        Fingerprints previous;
+        synchronized (lock) {
+            if (entries.get(entry.id) != entry) {
+                return; // unwatched or replaced meanwhile
+            }
+            previous = entry.fingerprints;
+        }
+
+        Change change = previous != null ? previous.diff(entry.id, checkedAt, result, fingerprints) : null;
+        boolean delivered = true;
+        if (change != null) {
+            LOG.info("Watchlist entry {} changed: {} added, {} modified, {} removed", entry.id,
+                    change.getAddedHits().size(), change.getModifiedHits().size(), change.getRemovedCount());
+            try {
+                listener.onChange(change);
+            } catch (RuntimeException e) {
+                // Keep the previous fingerprints, so the next re-check reports the change again
+                LOG.error("Watchlist listener failed for entry {}", entry.id, e);
+                delivered = false;
+            }
+        } else {
+            LOG.debug("Watchlist entry {} {}", entry.id, previous == null ? "baseline recorded" : "unchanged");
+        }
+
+        synchronized (lock) {
+            checkCount++;
+            if (change != null) {
+                changeCount++;
+            }
+            if (entries.get(entry.id) == entry) {
+                if (delivered) {
+                    entry.fingerprints = fingerprints;
+                }
+                reschedule(entry, checkedAt.plus(recheckInterval));
+            }
+        }
+    }
+
+    private void failed(Entry entry, Instant checkedAt, String errorCode) {
+        Duration delay = RETRY_DELAY.compareTo(recheckInterval) < 0 ? RETRY_DELAY : recheckInterval;
+        LOG.warn("Watchlist check of entry {} failed ({}), retrying in {} min", entry.id, errorCode, delay.toMinutes());
+        synchronized (lock) {
+            failureCount++;
+            if (entries.get(entry.id) == entry) {
+                reschedule(entry, checkedAt.plus(delay));
+            }
+        }
+    }
+
+    // guarded by lock
+    private void reschedule(Entry entry, Instant nextDue) {
+        entry.nextDue = nextDue;
+        entry.sequence = sequence++;
+        due.add(entry);
+    }
+
+    private static final class Entry {
+        private final String id;
+        // Mutated only while the entry is not in the due queue
+        private Instant nextDue;
+        private long sequence;
+        // null until the baseline is recorded
+        private Fingerprints fingerprints;
+
+        private Entry(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Identity and content keys of the hits of one result, sorted by identity (16 bytes per hit).
+     */
+    private static final class Fingerprints {
+        private final long[] identities;
+        private final long[] contents;
+
+        private Fingerprints(long[] identities, long[] contents) {
+            this.identities = identities;
+            this.contents = contents;
+        }
+
+        static Fingerprints of(List<XMeldHit> hits) {
+            int n = hits.size();
+            long[] packed = new long[2 * n];
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                packed[2 * i] = XMeldHitFingerprint.identity(hits.get(i));
+                packed[2 * i + 1] = XMeldHitFingerprint.content(hits.get(i));
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.<Integer>comparingLong(i -> packed[2 * i]).thenComparingLong(i -> packed[2 * i + 1]));
+            long[] identities = new long[n];
+            long[] contents = new long[n];
+            for (int i = 0; i < n; i++) {
+                identities[i] = packed[2 * order[i]];
+                contents[i] = packed[2 * order[i] + 1];
+            }
+            return new Fingerprints(identities, contents);
+        }
+
+        /**
+         * @return The differences to {@code current}, whose hits are in {@code result}; null if equal.
+         */
+        Change diff(String entryId, Instant checkedAt, XMeldResult result, Fingerprints current) {
+            if (Arrays.equals(identities, current.identities) && Arrays.equals(contents, current.contents)) {
+                return null;
+            }
+            List<XMeldHit> added = new ArrayList<>();
+            List<XMeldHit> modified = new ArrayList<>();
+            for (XMeldHit hit : result.getTreffer()) {
+                int first = firstIndexOf(identities, XMeldHitFingerprint.identity(hit));
+                if (first < 0) {
+                    added.add(hit);
+                } else if (!containsContent(first, XMeldHitFingerprint.content(hit))) {
+                    modified.add(hit);
+                }
+            }
+            int removed = 0;
+            for (int i = 0; i < identities.length; i++) {
+                if ((i == 0 || identities[i] != identities[i - 1])
+                        && firstIndexOf(current.identities, identities[i]) < 0) {
+                    removed++;
+                }
+            }
+            return new Change(entryId, checkedAt, result, added, modified, removed);
+        }
+
+        private boolean containsContent(int first, long content) {
+            for (int i = first; i < identities.length && identities[i] == identities[first]; i++) {
+                if (contents[i] == content) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int firstIndexOf(long[] sorted, long key) {
+            int index = Arrays.binarySearch(sorted, key);
+            while (index > 0 && sorted[index - 1] == key) {
+                index--;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Re-check result of an entry that differs from the previous one.
+     */
+    public static final class Change {
+        private final String entryId;
+        private final Instant checkedAt;
+        private final XMeldResult result;
+        private final List<XMeldHit> addedHits;
+        private final List<XMeldHit> modifiedHits;
+        private final int removedCount;
+
+        private Change(String entryId, Instant checkedAt, XMeldResult result, List<XMeldHit> addedHits,
+                       List<XMeldHit> modifiedHits, int removedCount) {
+            this.entryId = entryId;
+            this.checkedAt = checkedAt;
+            this.result = result;
+            this.addedHits = Collections.unmodifiableList(addedHits);
+            this.modifiedHits = Collections.unmodifiableList(modifiedHits);
+            this.removedCount = removedCount;
+        }
+
+        public String getEntryId() {
+            return entryId;
+        }
+
+        public Instant getCheckedAt() {
+            return checkedAt;
+        }
+
+        /**
+         * @return The complete result of the re-check.
+         */
+        public XMeldResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return Hits of persons that were not returned before.
+         */
+        public List<XMeldHit> getAddedHits() {
+            return addedHits;
+        }
+
+        /**
+         * @return Hits of persons returned before whose data changed (address, flags, ID documents, ...).
+         */
+        public List<XMeldHit> getModifiedHits() {
+            return modifiedHits;
+        }
+
+        /**
+         * @return Number of persons returned before but not anymore. Only fingerprints are kept, so
+         * the removed hits themselves are not available.
+         */
+        public int getRemovedCount() {
+            return removedCount;
+        }
+    }
+}
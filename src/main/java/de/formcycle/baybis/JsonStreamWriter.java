@@ -0,0 +1,241 @@
+package de.formcycle.baybis;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * Minimal streaming JSON writer used to serialise {@link XMeldResult} without building
+ * an intermediate {@code org.json} tree. Output is compact (no indentation) and
+ * compatible with {@code new JSONObject(String)}.
+ *
+ * <p>Created without a {@link Writer}, it builds the {@code org.json} tree directly instead
+ * (see {@link #getRoot()}), so callers that need a {@link JSONObject} skip the text round trip.</p>
+ */
+final class JsonStreamWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    // true when the next value/name in the current container needs a leading comma
+    private boolean needsComma;
+    // Tree mode only: open containers (innermost first), the name of the next member and the finished root
+    private final Deque<Object> containers = new ArrayDeque<>();
+    private String pendingName;
+    private Object root;
+
+    JsonStreamWriter(Writer out) {
+        this.out = Objects.requireNonNull(out);
+    }
+
+    /**
+     * Tree mode: values are collected into {@link JSONObject}s and {@link JSONArray}s.
+     */
+    JsonStreamWriter() {
+        this.out = null;
+    }
+
+    /**
+     * @return The outermost object or array written in tree mode, or {@code null} if none was.
+     */
+    Object getRoot() {
+        return root;
+    }
+
+    JsonStreamWriter beginObject() throws IOException {
+        if (out == null) {
+            JSONObject object = new JSONObject();
+            add(object);
+            containers.push(object);
+            return this;
+        }
+        separator();
+        out.write('{');
+        needsComma = false;
+        return this;
+    }
+
+    JsonStreamWriter endObject() throws IOException {
+        if (out == null) {
+            containers.pop();
+            return this;
+        }
+        out.write('}');
+        needsComma = true;
+        return this;
+    }
+
+    JsonStreamWriter beginArray() throws IOException {
+        if (out == null) {
+            JSONArray array = new JSONArray();
+            add(array);
+            containers.push(array);
+            return this;
+        }
+        separator();
+        out.write('[');
+        needsComma = false;
+        return this;
+    }
+
+    JsonStreamWriter endArray() throws IOException {
+        if (out == null) {
+            containers.pop();
+            return this;
+        }
+        out.write(']');
+        needsComma = true;
+        return this;
+    }
+
+    JsonStreamWriter name(String name) throws IOException {
+        if (out == null) {
+            pendingName = name;
+            return this;
+        }
+        separator();
+        writeQuoted(name);
+        out.write(':');
+        needsComma = false;
+        return this;
+    }
+
+    JsonStreamWriter value(String value) throws IOException {
+        if (out == null) {
+            return add(value);
+        }
+        separator();
+        writeQuoted(value);
+        needsComma = true;
+        return this;
+    }
+
+    JsonStreamWriter value(int value) throws IOException {
+        if (out == null) {
+            return add(value);
+        }
+        separator();
+        out.write(Integer.toString(value));
+        needsComma = true;
+        return this;
+    }
+
+    JsonStreamWriter value(boolean value) throws IOException {
+        if (out == null) {
+            return add(value);
+        }
+        separator();
+        out.write(value ? "true" : "false");
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes UTF-8 bytes as a JSON string, decoding them in small chunks so large
+     * payloads never need a contiguous {@code char[]}.
+     */
+    JsonStreamWriter value(ByteBuffer utf8) throws IOException {
+        if (out == null) {
+            return add(StandardCharsets.UTF_8.decode(utf8.duplicate()).toString());
+        }
+        separator();
+        out.write('"');
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = utf8.duplicate();
+        CharBuffer chunk = CharBuffer.allocate(4096);
+        char previous = 0;
+        while (decoder.decode(in, chunk, true).isOverflow()) {
+            previous = writeEscaped(chunk.flip(), previous);
+            chunk.clear();
+        }
+        decoder.flush(chunk); // UTF-8 keeps no state, so this never overflows
+        writeEscaped(chunk.flip(), previous);
+        out.write('"');
+        needsComma = true;
+        return this;
+    }
+
+    private JsonStreamWriter add(Object value) {
+        Object container = containers.peek();
+        if (container == null) {
+            root = value;
+        } else if (container instanceof JSONObject) {
+            ((JSONObject) container).put(pendingName, value);
+        } else {
+            ((JSONArray) container).put(value);
+        }
+        return this;
+    }
+
+    private void separator() throws IOException {
+        if (needsComma) {
+            out.write(',');
+        }
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        out.write('"');
+        writeEscaped(value, (char) 0);
+        out.write('"');
+    }
+
+    // Escapes like org.json's JSONObject.quote; returns the last character written for "</" handling
+    private char writeEscaped(CharSequence value, char previous) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    out.write('\\');
+                    out.write(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        out.write('\\');
+                    }
+                    out.write(c);
+                    break;
+                case '\b':
+                    out.write("\\b");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\f':
+                    out.write("\\f");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xA0) || (c >= 0x2000 && c < 0x2100)) {
+                        out.write("\\u");
+                        out.write(HEX[(c >> 12) & 0xF]);
+                        out.write(HEX[(c >> 8) & 0xF]);
+                        out.write(HEX[(c >> 4) & 0xF]);
+                        out.write(HEX[c & 0xF]);
+                    } else {
+                        out.write(c);
+                    }
+            }
+            previous = c;
+        }
+        return previous;
+    }
+}
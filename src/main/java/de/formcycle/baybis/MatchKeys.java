@@ -0,0 +1,201 @@
+package de.formcycle.baybis;
+
+/**
+ * Normalisation and phonetic keys for comparing German names and places.
+ *
+ * <p>All functions write into caller-provided {@code char[]} buffers and return the number of chars
+ * written, so hits can be keyed without allocating. Output buffers must hold {@code 2 * input length}
+ * chars (umlaut expansion, {@code x -> 48}).</p>
+ */
+final class MatchKeys {
+
+    private MatchKeys() {
+    }
+
+    /**
+     * Lower-cases, folds umlauts and ß ({@code ä -> ae}, {@code ß -> ss}), strips accents of Latin-1
+     * letters and collapses everything that is not a letter or digit into single spaces.
+     * "Müller-Lüdenscheidt" and "MUELLER LUEDENSCHEIDT" both become {@code "mueller luedenscheidt"}.
+     */
+    static int fold(CharSequence in, char[] out) {
+        int length = 0;
+        boolean pendingSpace = false;
+        for (int i = 0, n = in.length(); i < n; i++) {
+            char c = in.charAt(i);
+            if (c < 0x80) { // fast path, almost all chars of German names
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                } else if ((c < 'a' || c > 'z') && (c < '0' || c > '9')) {
+                    pendingSpace = length > 0;
+                    continue;
+                }
+                if (pendingSpace) {
+                    out[length++] = ' ';
+                    pendingSpace = false;
+                }
+                out[length++] = c;
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            char second = 0;
+            switch (c) {
+                case 'ä': case 'æ': c = 'a'; second = 'e'; break;
+                case 'ö': case 'ø': case 'œ': c = 'o'; second = 'e'; break;
+                case 'ü': c = 'u'; second = 'e'; break;
+                case 'ß': c = 's'; second = 's'; break;
+                case 'à': case 'á': case 'â': case 'ã': case 'å': c = 'a'; break;
+                case 'ç': c = 'c'; break;
+                case 'è': case 'é': case 'ê': case 'ë': c = 'e'; break;
+                case 'ì': case 'í': case 'î': case 'ï': c = 'i'; break;
+                case 'ñ': c = 'n'; break;
+                case 'ò': case 'ó': case 'ô': case 'õ': c = 'o'; break;
+                case 'ù': case 'ú': case 'û': c = 'u'; break;
+                case 'ý': case 'ÿ': c = 'y'; break;
+                default: break;
+            }
+            if (!Character.isLetterOrDigit(c)) {
+                pendingSpace = length > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                out[length++] = ' ';
+                pendingSpace = false;
+            }
+            out[length++] = c;
+            if (second != 0) {
+                out[length++] = second;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Kölner Phonetik of one folded token ({@code in[from..to)}, output of {@link #fold}).
+     * Non-letters are ignored. "Wikipedia" gives {@code "3412"}, "Müller" and "Mueller" give {@code "657"}.
+     */
+    static int koelnerPhonetik(char[] in, int from, int to, char[] out) {
+        int length = 0;
+        char last = 0;
+        for (int i = from; i < to; i++) {
+            char c = in[i];
+            char prev = i > from ? in[i - 1] : 0;
+            char next = i + 1 < to ? in[i + 1] : 0;
+            char code;
+            char code2 = 0;
+            switch (c) {
+                case 'a': case 'e': case 'i': case 'j': case 'o': case 'u': case 'y':
+                    code = '0';
+                    break;
+                case 'h':
+                    continue; // no code, does not separate equal codes either
+                case 'b':
+                    code = '1';
+                    break;
+                case 'p':
+                    code = next == 'h' ? '3' : '1';
+                    break;
+                case 'd': case 't':
+                    code = next == 'c' || next == 's' || next == 'z' ? '8' : '2';
+                    break;
+                case 'f': case 'v': case 'w':
+                    code = '3';
+                    break;
+                case 'g': case 'k': case 'q':
+                    code = '4';
+                    break;
+                case 'c':
+                    if (i == from) {
+                        code = next == 'l' || next == 'r' || isHardCFollower(next) ? '4' : '8';
+                    } else {
+                        code = isHardCFollower(next) && prev != 's' && prev != 'z' ? '4' : '8';
+                    }
+                    break;
+                case 'x':
+                    if (prev == 'c' || prev == 'k' || prev == 'q') {
+                        code = '8';
+                    } else {
+                        code = '4';
+                        code2 = '8';
+                    }
+                    break;
+                case 'l':
+                    code = '5';
+                    break;
+                case 'm': case 'n':
+                    code = '6';
+                    break;
+                case 'r':
+                    code = '7';
+                    break;
+                case 's': case 'z':
+                    code = '8';
+                    break;
+                default:
+                    continue;
+            }
+            length = appendCode(out, length, code, last);
+            last = code;
+            if (code2 != 0) {
+                length = appendCode(out, length, code2, last);
+                last = code2;
+            }
+        }
+        return length;
+    }
+
+    // Collapses repeated codes and drops vowels (0) except at the start
+    private static int appendCode(char[] out, int length, char code, char last) {
+        if (code == last) {
+            return length;
+        }
+        if (code == '0' && length > 0) {
+            return length;
+        }
+        out[length] = code;
+        return length + 1;
+    }
+
+    private static boolean isHardCFollower(char c) {
+        switch (c) {
+            case 'a': case 'h': case 'k': case 'o': case 'q': case 'u': case 'x':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parses an ISO date or a partially known date ({@code 1992-02-02}, {@code 1992-02}, {@code 1992}),
+     * ignoring surrounding whitespace, into {@code yyyymmdd} with {@code 00} for unknown parts.
+     *
+     * @return The packed date, or 0 if there is no 4-digit year.
+     */
+    static int packDate(CharSequence value) {
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int part = 0;
+        int digits = 0;
+        for (int i = 0, n = value.length(); i < n && part < 3; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (part == 0) {
+                    year = year * 10 + digit;
+                } else if (part == 1) {
+                    month = month * 10 + digit;
+                } else {
+                    day = day * 10 + digit;
+                }
+                digits++;
+            } else if (digits > 0) {
+                part++;
+                digits = 0;
+            }
+        }
+        if (year < 1000 || year > 9999 || month > 12 || day > 31) {
+            return 0;
+        }
+        return year * 10000 + month * 100 + day;
+    }
+}
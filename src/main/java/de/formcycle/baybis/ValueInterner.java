@@ -0,0 +1,39 @@
+package de.formcycle.baybis;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded canonicalising cache for low-cardinality values that repeat across hits and
+ * responses (place names, postal codes, code-list keys). Only non-personal fields should
+ * be passed in; names and IDs would otherwise stay reachable after the result is gone.
+ */
+final class ValueInterner {
+
+    static final ValueInterner SHARED = new ValueInterner(4096);
+
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    ValueInterner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the canonical instance for {@code value}. Once the cache is full, unknown values
+     * are returned as-is instead of evicting, so a single broad search cannot flush it.
+     */
+    String intern(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        String existing = values.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (values.size() >= maxSize) {
+            return value;
+        }
+        existing = values.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+}
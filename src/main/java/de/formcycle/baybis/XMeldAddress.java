@@ -0,0 +1,46 @@
+package de.formcycle.baybis;
+
+import java.io.IOException;
+
+/**
+ * Address (wohnung/anschrift) of a hit.
+ */
+public final class XMeldAddress {
+
+    private final String strasse;
+    private final String hausnummer;
+    private final String plz;
+    private final String ort;
+
+    XMeldAddress(String strasse, String hausnummer, String plz, String ort) {
+        this.strasse = strasse;
+        this.hausnummer = hausnummer;
+        this.plz = plz;
+        this.ort = ort;
+    }
+
+    public String getStrasse() {
+        return strasse;
+    }
+
+    public String getHausnummer() {
+        return hausnummer;
+    }
+
+    public String getPlz() {
+        return plz;
+    }
+
+    public String getOrt() {
+        return ort;
+    }
+
+    void writeJson(JsonStreamWriter json) throws IOException {
+        json.beginObject()
+                .name("strasse").value(strasse)
+                .name("hausnummer").value(hausnummer)
+                .name("plz").value(plz)
+                .name("ort").value(ort)
+                .endObject();
+    }
+}
@@ -0,0 +1,32 @@
+package de.formcycle.baybis;
+
+import java.io.IOException;
+
+/**
+ * Error block (xink:fehlermeldung) returned by BayBIS instead of a result.
+ */
+public final class XMeldError {
+
+    private final String code;
+    private final String message;
+
+    XMeldError(String code, String message) {
+        this.code = code;
+        this.message = message;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    void writeJson(JsonStreamWriter json) throws IOException {
+        json.beginObject()
+                .name("code").value(code)
+                .name("message").value(message)
+                .endObject();
+    }
+}
@@ -0,0 +1,123 @@
+package de.formcycle.baybis;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A single person found in an XMeld 1331/1333 response. Absent text values are empty strings.
+ */
+public final class XMeldHit {
+
+    private final String id;
+    private final String nachname;
+    private final String vorname;
+    private final String doktorgrad;
+    private final String geburtsdatum;
+    private final String geschlecht;
+    private final XMeldAddress adresse;
+    private final boolean verzogen;
+    private final boolean verringerterDatenumfang;
+    private final List<XMeldIdDocument> ausweisdokumente;
+
+    XMeldHit(String id, String nachname, String vorname, String doktorgrad, String geburtsdatum,
+             String geschlecht, XMeldAddress adresse, boolean verzogen, boolean verringerterDatenumfang,
+             List<XMeldIdDocument> ausweisdokumente) {
+        this.id = id;
+        this.nachname = nachname;
+        this.vorname = vorname;
+        this.doktorgrad = doktorgrad;
+        this.geburtsdatum = geburtsdatum;
+        this.geschlecht = geschlecht;
+        this.adresse = adresse;
+        this.verzogen = verzogen;
+        this.verringerterDatenumfang = verringerterDatenumfang;
+        this.ausweisdokumente = List.copyOf(ausweisdokumente);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getNachname() {
+        return nachname;
+    }
+
+    public String getVorname() {
+        return vorname;
+    }
+
+    public String getDoktorgrad() {
+        return doktorgrad;
+    }
+
+    public String getGeburtsdatum() {
+        return geburtsdatum;
+    }
+
+    public String getGeschlecht() {
+        return geschlecht;
+    }
+
+    public Optional<XMeldAddress> getAdresse() {
+        return Optional.ofNullable(adresse);
+    }
+
+    public boolean isVerzogen() {
+        return verzogen;
+    }
+
+    public boolean isVerringerterDatenumfang() {
+        return verringerterDatenumfang;
+    }
+
+    public List<XMeldIdDocument> getAusweisdokumente() {
+        return ausweisdokumente;
+    }
+
+    void writeJson(JsonStreamWriter json) throws IOException {
+        writeJson(json, 0, 0);
+    }
+
+    /**
+     * @param rang       1-based position after ranking, 0 if not ranked.
+     * @param matchScore Score from {@link XMeldHitRanker}, only written if ranked.
+     */
+    void writeJson(JsonStreamWriter json, int rang, int matchScore) throws IOException {
+        json.beginObject()
+                .name("id").value(id);
+        if (rang > 0) {
+            json.name("rang").value(rang)
+                    .name("matchScore").value(matchScore);
+        }
+        json.name("nachname").value(nachname)
+                .name("vorname").value(vorname);
+        if (!doktorgrad.isEmpty()) {
+            json.name("doktorgrad").value(doktorgrad);
+        }
+        if (!geburtsdatum.isEmpty()) {
+            json.name("geburtsdatum").value(geburtsdatum);
+        }
+        if (!geschlecht.isEmpty()) {
+            json.name("geschlecht").value(geschlecht);
+        }
+        if (adresse != null) {
+            json.name("adresse");
+            adresse.writeJson(json);
+        }
+        if (verzogen) {
+            json.name("verzogen").value(true);
+        }
+        if (verringerterDatenumfang) {
+            json.name("verringerterDatenumfang").value(true);
+        }
+        if (!ausweisdokumente.isEmpty()) {
+            json.name("ausweisdokumente").beginArray();
+            for (XMeldIdDocument ausweis : ausweisdokumente) {
+                ausweis.writeJson(json);
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+}
@@ -0,0 +1,100 @@
+package de.formcycle.baybis;
+
+import java.util.List;
+
+/**
+ * 64-bit keys of parsed hits, used by {@link BayBisWatchlistScheduler} to detect changes between
+ * re-checks without keeping the hits themselves.
+ *
+ * <p>Values are hashed with FNV-1a, each prefixed with its length so that moving text between
+ * fields changes the key, and finished with the SplitMix64 mixer. The keys are not cryptographic;
+ * they only have to tell apart two states of the same person.</p>
+ */
+final class XMeldHitFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private XMeldHitFingerprint() {
+    }
+
+    /**
+     * Key identifying the person across re-checks: the Identifikationsmerkmal, or name and date of
+     * birth if BayBIS did not return one.
+     */
+    static long identity(XMeldHit hit) {
+        long h = FNV_OFFSET;
+        if (!hit.getId().isEmpty()) {
+            h = add(h, hit.getId());
+        } else {
+            h = add(h, hit.getNachname());
+            h = add(h, hit.getVorname());
+            h = add(h, hit.getGeburtsdatum());
+        }
+        return mix(h);
+    }
+
+    /**
+     * Key over everything returned for the person. The order of the ID documents does not matter.
+     */
+    static long content(XMeldHit hit) {
+        long h = FNV_OFFSET;
+        h = add(h, hit.getId());
+        h = add(h, hit.getNachname());
+        h = add(h, hit.getVorname());
+        h = add(h, hit.getDoktorgrad());
+        h = add(h, hit.getGeburtsdatum());
+        h = add(h, hit.getGeschlecht());
+        if (hit.getAdresse().isPresent()) {
+            XMeldAddress adresse = hit.getAdresse().get();
+            h = add(h, 1);
+            h = add(h, adresse.getStrasse());
+            h = add(h, adresse.getHausnummer());
+            h = add(h, adresse.getPlz());
+            h = add(h, adresse.getOrt());
+        } else {
+            h = add(h, 0);
+        }
+        h = add(h, (hit.isVerzogen() ? 2 : 0) | (hit.isVerringerterDatenumfang() ? 1 : 0));
+
+        List<XMeldIdDocument> ausweisdokumente = hit.getAusweisdokumente();
+        long documents = 0;
+        for (XMeldIdDocument ausweis : ausweisdokumente) {
+            long d = FNV_OFFSET;
+            d = add(d, ausweis.getPassart());
+            d = add(d, ausweis.getSeriennummer());
+            d = add(d, ausweis.getGueltigkeitsdauer());
+            d = add(d, ausweis.getBehoerde());
+            d = add(d, ausweis.getAusstellungsdatum());
+            documents += mix(d); // commutative
+        }
+        h = add(h, ausweisdokumente.size());
+        h = add(h, (int) documents);
+        h = add(h, (int) (documents >>> 32));
+        return mix(h);
+    }
+
+    private static long add(long h, String value) {
+        int length = value.length();
+        h = add(h, length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            h = (h ^ (c & 0xff)) * FNV_PRIME;
+            h = (h ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long add(long h, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            h = (h ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,282 @@
+package de.formcycle.baybis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Sorts the hits of an {@link XMeldResult} by how well they match the original search criteria,
+ * so case workers find the most likely person at the top of long result lists.
+ *
+ * <p>Every hit gets a score from 0 to 100, weighted over the criteria that were searched for:
+ * Nachname 40, Vornamen 25, Geburtsdatum 25, address 10. Names match exactly after folding
+ * (case, umlauts, ß, accents, separators), by Kölner Phonetik ("Maier"/"Meyer") or by prefix;
+ * birth dates also partially (swapped day and month, same year and month, ...).</p>
+ *
+ * <p>The criteria keys are precomputed in {@link XMeldSearchCriteria}; hits are keyed into reusable
+ * scratch buffers, so scoring does not allocate per hit. Equal scores keep the BayBIS order.</p>
+ */
+public final class XMeldHitRanker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XMeldHitRanker.class);
+
+    private static final int WEIGHT_NACHNAME = 40;
+    private static final int WEIGHT_VORNAME = 25;
+    private static final int WEIGHT_GEBURTSDATUM = 25;
+    private static final int WEIGHT_ADRESSE = 10;
+
+    private static final int SCORE_EXACT = 100;
+    private static final int SCORE_PHONETIC = 80;
+    private static final int SCORE_PREFIX = 60;
+    // Shortest common prefix that counts as a match ("Hans" / "Hansjörg")
+    private static final int MIN_PREFIX = 3;
+
+    private XMeldHitRanker() {
+    }
+
+    /**
+     * @return A new result with the hits sorted best match first and a match score per hit, or
+     *         {@code result} itself if it is an error or the criteria are empty.
+     */
+    public static XMeldResult rank(XMeldResult result, XMeldSearchCriteria criteria) {
+        Objects.requireNonNull(result, "result must not be null");
+        Objects.requireNonNull(criteria, "criteria must not be null");
+        List<XMeldHit> hits = result.getTreffer();
+        if (result.getStatus() != XMeldResult.Status.SUCCESS || criteria.isEmpty()) {
+            return result;
+        }
+        long start = System.nanoTime();
+        Scratch scratch = new Scratch();
+        int[] scores = new int[hits.size()];
+        // Scores are 0..100, so a stable counting sort replaces the comparison sort
+        int[] firstIndexOfScore = new int[SCORE_EXACT + 2];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = score(hits.get(i), criteria, scratch);
+            firstIndexOfScore[SCORE_EXACT - scores[i] + 1]++;
+        }
+        for (int i = 1; i < firstIndexOfScore.length; i++) {
+            firstIndexOfScore[i] += firstIndexOfScore[i - 1];
+        }
+        XMeldHit[] sorted = new XMeldHit[scores.length];
+        int[] sortedScores = new int[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            int position = firstIndexOfScore[SCORE_EXACT - scores[i]]++;
+            sorted[position] = hits.get(i);
+            sortedScores[position] = scores[i];
+        }
+        LOG.debug("Ranked {} hit(s) in {} µs", sorted.length, (System.nanoTime() - start) / 1000);
+        return XMeldResult.ranked(result, Arrays.asList(sorted), sortedScores);
+    }
+
+    /**
+     * @return Weighted match score of {@code hit}, 0 to 100.
+     */
+    static int score(XMeldHit hit, XMeldSearchCriteria criteria, Scratch scratch) {
+        int total = 0;
+        int weights = 0;
+        if (criteria.nachnameKeys.count > 0) {
+            total += WEIGHT_NACHNAME * nameScore(hit.getNachname(), criteria.nachnameKeys, scratch);
+            weights += WEIGHT_NACHNAME;
+        }
+        if (criteria.vornameKeys.count > 0) {
+            total += WEIGHT_VORNAME * nameScore(hit.getVorname(), criteria.vornameKeys, scratch);
+            weights += WEIGHT_VORNAME;
+        }
+        if (criteria.packedGeburtsdatum != 0) {
+            total += WEIGHT_GEBURTSDATUM * dateScore(MatchKeys.packDate(hit.getGeburtsdatum()), criteria.packedGeburtsdatum);
+            weights += WEIGHT_GEBURTSDATUM;
+        }
+        if (criteria.hasAddress()) {
+            total += WEIGHT_ADRESSE * addressScore(hit, criteria, scratch);
+            weights += WEIGHT_ADRESSE;
+        }
+        return weights == 0 ? 0 : (total + weights / 2) / weights;
+    }
+
+    /**
+     * Averages, over the searched name tokens, the best match among the hit's tokens.
+     * Extra tokens on either side (double names, second first names) cost a little.
+     */
+    private static int nameScore(String value, XMeldSearchCriteria.Tokens keys, Scratch scratch) {
+        char[] folded = scratch.folded(value.length());
+        int length = MatchKeys.fold(value, folded);
+        if (length == 0) {
+            return 0;
+        }
+        int sum = 0;
+        int hitTokens = 0;
+        for (int k = 0; k < keys.count; k++) {
+            int best = 0;
+            int start = 0;
+            hitTokens = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i < length && folded[i] != ' ') {
+                    continue;
+                }
+                if (i > start) {
+                    hitTokens++;
+                    best = Math.max(best, tokenScore(folded, start, i, keys.folded[k], keys.phonetic[k], scratch));
+                }
+                start = i + 1;
+            }
+            sum += best;
+        }
+        int score = sum / keys.count;
+        return hitTokens != keys.count && score == SCORE_EXACT ? SCORE_EXACT - 5 : score;
+    }
+
+    private static int tokenScore(char[] folded, int from, int to, char[] key, char[] phoneticKey, Scratch scratch) {
+        int length = to - from;
+        if (length == key.length && regionEquals(folded, from, key, 0, length)) {
+            return SCORE_EXACT;
+        }
+        char[] code = scratch.code(length);
+        int codeLength = MatchKeys.koelnerPhonetik(folded, from, to, code);
+        if (codeLength > 0 && codeLength == phoneticKey.length && regionEquals(code, 0, phoneticKey, 0, codeLength)) {
+            return SCORE_PHONETIC;
+        }
+        int common = Math.min(length, key.length);
+        if (common >= MIN_PREFIX && regionEquals(folded, from, key, 0, common)) {
+            return SCORE_PREFIX;
+        }
+        return 0;
+    }
+
+    /**
+     * Birth dates as {@code yyyymmdd}, {@code 00} for unknown parts (both sides may be partially known).
+     */
+    static int dateScore(int hit, int searched) {
+        if (hit == 0) {
+            return 0;
+        }
+        if (hit == searched) {
+            return SCORE_EXACT;
+        }
+        int hy = hit / 10000;
+        int hm = hit / 100 % 100;
+        int hd = hit % 100;
+        int sy = searched / 10000;
+        int sm = searched / 100 % 100;
+        int sd = searched % 100;
+        boolean partial = hm == 0 || hd == 0 || sm == 0 || sd == 0;
+        if (partial) {
+            // Compare only what both sides know
+            boolean sameYear = hy == sy;
+            boolean sameMonth = hm == 0 || sm == 0 || hm == sm;
+            boolean sameDay = hd == 0 || sd == 0 || hd == sd;
+            if (!sameYear || !sameMonth || !sameDay) {
+                return sameYear ? 30 : 0;
+            }
+            // Searched for "1992-02" and the hit was born 1992-02-xx: as good as it gets
+            boolean hitKnowsSearchedParts = (sm == 0 || hm != 0) && (sd == 0 || hd != 0);
+            return hitKnowsSearchedParts ? SCORE_EXACT : 70;
+        }
+        if (hy == sy && hm == sd && hd == sm) {
+            return 70; // day and month swapped
+        }
+        if (hm == sm && hd == sd && Math.abs(hy - sy) <= 1) {
+            return 50; // typo in the year
+        }
+        if (hy == sy && hm == sm) {
+            return 50;
+        }
+        if (hm == sm && hd == sd) {
+            return 40;
+        }
+        return hy == sy ? 30 : 0;
+    }
+
+    private static int addressScore(XMeldHit hit, XMeldSearchCriteria criteria, Scratch scratch) {
+        XMeldAddress address = hit.getAdresse().orElse(null);
+        if (address == null) {
+            return 0;
+        }
+        int total = 0;
+        int weights = 0;
+        if (!criteria.foldedPlz.isEmpty()) {
+            total += 40 * cachedValueScore(address.getPlz(), criteria.foldedPlz, scratch, Scratch.PLZ);
+            weights += 40;
+        }
+        if (!criteria.foldedOrt.isEmpty()) {
+            total += 30 * cachedValueScore(address.getOrt(), criteria.foldedOrt, scratch, Scratch.ORT);
+            weights += 30;
+        }
+        if (!criteria.foldedStrasse.isEmpty()) {
+            total += 30 * cachedValueScore(address.getStrasse(), criteria.foldedStrasse, scratch, Scratch.STRASSE);
+            weights += 30;
+        }
+        return total / weights;
+    }
+
+    // Place names are interned by the parser, so the same instance recurs across hits
+    private static int cachedValueScore(String value, String key, Scratch scratch, int field) {
+        int slot = field * Scratch.CACHE_SLOTS + (System.identityHashCode(value) & (Scratch.CACHE_SLOTS - 1));
+        if (scratch.cachedValues[slot] == value) {
+            return scratch.cachedScores[slot];
+        }
+        int score = valueScore(value, key, scratch);
+        scratch.cachedValues[slot] = value;
+        scratch.cachedScores[slot] = score;
+        return score;
+    }
+
+    // Exact after folding, or a common prefix of at least 5 chars ("hansastr" / "hansastrasse")
+    private static int valueScore(String value, String key, Scratch scratch) {
+        char[] folded = scratch.folded(value.length());
+        int length = MatchKeys.fold(value, folded);
+        int common = 0;
+        int max = Math.min(length, key.length());
+        while (common < max && folded[common] == key.charAt(common)) {
+            common++;
+        }
+        if (common == length && common == key.length()) {
+            return SCORE_EXACT;
+        }
+        return common == max && common >= 5 ? SCORE_PREFIX : 0;
+    }
+
+    private static boolean regionEquals(char[] a, int aFrom, char[] b, int bFrom, int length) {
+        if (aFrom + length > a.length || bFrom + length > b.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[aFrom + i] != b[bFrom + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Buffers reused across the hits of one ranking run.
+     */
+    static final class Scratch {
+        static final int PLZ = 0;
+        static final int ORT = 1;
+        static final int STRASSE = 2;
+        static final int CACHE_SLOTS = 64;
+
+        private char[] folded = new char[64];
+        private char[] code = new char[64];
+        // Direct-mapped score cache per address field, keyed by string identity
+        final String[] cachedValues = new String[3 * CACHE_SLOTS];
+        final int[] cachedScores = new int[3 * CACHE_SLOTS];
+
+        char[] folded(int inputLength) {
+            if (folded.length < inputLength * 2) {
+                folded = new char[inputLength * 2];
+            }
+            return folded;
+        }
+
+        char[] code(int foldedLength) {
+            if (code.length < foldedLength * 2) {
+                code = new char[foldedLength * 2];
+            }
+            return code;
+        }
+    }
+}
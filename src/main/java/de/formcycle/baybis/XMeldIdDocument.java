@@ -0,0 +1,65 @@
+package de.formcycle.baybis;
+
+import java.io.IOException;
+
+/**
+ * Passport / ID document (ausweisdokument) of a hit. Absent values are empty strings.
+ */
+public final class XMeldIdDocument {
+
+    private final String passart;
+    private final String seriennummer;
+    private final String gueltigkeitsdauer;
+    private final String behoerde;
+    private final String ausstellungsdatum;
+
+    XMeldIdDocument(String passart, String seriennummer, String gueltigkeitsdauer,
+                    String behoerde, String ausstellungsdatum) {
+        this.passart = passart;
+        this.seriennummer = seriennummer;
+        this.gueltigkeitsdauer = gueltigkeitsdauer;
+        this.behoerde = behoerde;
+        this.ausstellungsdatum = ausstellungsdatum;
+    }
+
+    public String getPassart() {
+        return passart;
+    }
+
+    public String getSeriennummer() {
+        return seriennummer;
+    }
+
+    public String getGueltigkeitsdauer() {
+        return gueltigkeitsdauer;
+    }
+
+    public String getBehoerde() {
+        return behoerde;
+    }
+
+    public String getAusstellungsdatum() {
+        return ausstellungsdatum;
+    }
+
+    boolean isEmpty() {
+        return passart.isEmpty() && seriennummer.isEmpty() && gueltigkeitsdauer.isEmpty()
+                && behoerde.isEmpty() && ausstellungsdatum.isEmpty();
+    }
+
+    void writeJson(JsonStreamWriter json) throws IOException {
+        json.beginObject();
+        writeIfPresent(json, "passart", passart);
+        writeIfPresent(json, "seriennummer", seriennummer);
+        writeIfPresent(json, "gueltigkeitsdauer", gueltigkeitsdauer);
+        writeIfPresent(json, "behoerde", behoerde);
+        writeIfPresent(json, "ausstellungsdatum", ausstellungsdatum);
+        json.endObject();
+    }
+
+    private static void writeIfPresent(JsonStreamWriter json, String name, String value) throws IOException {
+        if (!value.isEmpty()) {
+            json.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package de.formcycle.baybis;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one {@link XMeldResponseParser} run. Carries counts and codes only, no person data.
+ */
+@Name("de.formcycle.baybis.Parse")
+@Label("XMeld Response Parsing")
+@Category({"BayBIS", "Connector"})
+@Description("Parsing of an XMeld response into hits")
+@StackTrace(false)
+class XMeldParseEvent extends Event {
+
+    @Label("Response Size")
+    @Description("Size of the parsed document in UTF-8 bytes (also for String input), -1 for streams")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Status")
+    String status;
+
+    @Label("Hit Count")
+    int hitCount;
+
+    @Label("Parallel")
+    @Description("Whether the response was split and parsed on the fork-join pool")
+    boolean parallel;
+
+    @Label("Error Code")
+    @Description("XMeld error code from the response, or the connector error code if parsing failed")
+    String errorCode;
+}
@@ -0,0 +1,362 @@
+package de.formcycle.baybis;
+
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits an encoded XMeld 1331/1333 answer into one self-contained XML fragment per
+ * {@code person} element, so the fragments can be parsed independently (and in parallel).
+ *
+ * <p>Each fragment is wrapped in a synthetic root element that repeats the namespace
+ * declarations in scope at the {@code person} element, i.e. those of all its ancestors.
+ * Only the raw bytes are scanned; nothing is decoded except ancestor start tags declaring
+ * namespaces.</p>
+ *
+ * <p>The split is a heuristic (it assumes {@code person} elements do not nest). Callers have to
+ * fall back to parsing the whole document if a fragment cannot be parsed. A {@code person} element
+ * outside the XMeld namespace ends the split as well, since the sequential parse only falls back to
+ * such elements if there are no XMeld ones.</p>
+ */
+final class XMeldPersonChunks {
+
+    private static final Pattern NAMESPACE_DECLARATION =
+            Pattern.compile("\\sxmlns(:[\\w.\\-]+)?\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+    private static final byte[] PERSON = "person".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR_MARKER = "fehlermeldung".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] XMLNS = "xmlns".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WRAPPER_END = "</chunk>".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteBuffer xml;
+    // Start of the synthetic root per distinct set of namespace declarations in scope
+    private final List<byte[]> wrapperStarts;
+    // {start, end, index into wrapperStarts} per person element
+    private final List<int[]> ranges;
+
+    private XMeldPersonChunks(ByteBuffer xml, List<byte[]> wrapperStarts, List<int[]> ranges) {
+        this.xml = xml;
+        this.wrapperStarts = wrapperStarts;
+        this.ranges = ranges;
+    }
+
+    /**
+     * @return The chunks, or empty if the document is not a plain result answer
+     *         (e.g. an error message or an unexpected structure) and should be parsed as a whole.
+     */
+    static Optional<XMeldPersonChunks> split(ByteBuffer xml) {
+        return split(xml, true);
+    }
+
+    /**
+     * @param keepDeclaration False if the bytes were re-encoded to UTF-8 (from a {@code String}), so the
+     *                        encoding named in the XML declaration no longer applies. The fragments then
+     *                        have no declaration and are read as UTF-8.
+     */
+    static Optional<XMeldPersonChunks> split(ByteBuffer xml, boolean keepDeclaration) {
+        ByteBuffer buf = xml.duplicate();
+        int limit = buf.limit();
+        if (indexOf(buf, ERROR_MARKER, buf.position()) >= 0) {
+            return Optional.empty();
+        }
+
+        // Prolog: keep the XML declaration (encoding), skip comments and processing instructions
+        byte[] declaration = new byte[0];
+        int pos = buf.position();
+        int rootStart = -1;
+        while (pos < limit) {
+            int lt = indexOf(buf, (byte) '<', pos);
+            if (lt < 0 || lt + 1 >= limit) {
+                return Optional.empty();
+            }
+            byte next = buf.get(lt + 1);
+            if (next == '?') {
+                int end = indexOf(buf, "?>".getBytes(StandardCharsets.US_ASCII), lt);
+                if (end < 0) {
+                    return Optional.empty();
+                }
+                if (keepDeclaration && startsWith(buf, lt, "<?xml ")) {
+                    declaration = copy(buf, lt, end + 2);
+                }
+                pos = end + 2;
+            } else if (next == '!') {
+                int end = startsWith(buf, lt, "<!--")
+                        ? indexOf(buf, "-->".getBytes(StandardCharsets.US_ASCII), lt)
+                        : indexOf(buf, (byte) '>', lt);
+                if (end < 0) {
+                    return Optional.empty();
+                }
+                pos = end + 1;
+            } else {
+                rootStart = lt;
+                break;
+            }
+        }
+        if (rootStart < 0) {
+            return Optional.empty();
+        }
+        // Open elements from the root down, each with the namespace declarations of its start tag
+        Deque<List<String>> open = new ArrayDeque<>();
+        List<byte[]> wrapperStarts = new ArrayList<>();
+        String lastDeclarations = null;
+        // person elements do not nest in 1331/1333 answers, so the first matching end tag closes them
+        List<int[]> ranges = new ArrayList<>();
+        pos = rootStart;
+        while (true) {
+            int lt = indexOf(buf, (byte) '<', pos);
+            if (lt < 0 || lt + 1 >= limit) {
+                break;
+            }
+            byte next = buf.get(lt + 1);
+            if (next == '/') {
+                open.pollLast();
+                int end = indexOf(buf, (byte) '>', lt);
+                if (end < 0 || open.isEmpty()) {
+                    break; // end of the root element
+                }
+                pos = end + 1;
+                continue;
+            }
+            if (next == '!' || next == '?') {
+                int end = startsWith(buf, lt, "<!--") ? indexOf(buf, "-->".getBytes(StandardCharsets.US_ASCII), lt)
+                        : startsWith(buf, lt, "<![CDATA[") ? indexOf(buf, "]]>".getBytes(StandardCharsets.US_ASCII), lt)
+                        : indexOf(buf, (byte) '>', lt);
+                if (end < 0) {
+                    return Optional.empty();
+                }
+                pos = end + 1;
+                continue;
+            }
+            int nameEnd = endOfName(buf, lt + 1);
+            int tagEnd = endOfTag(buf, lt);
+            if (tagEnd < 0) {
+                return Optional.empty();
+            }
+            boolean empty = buf.get(tagEnd - 2) == '/';
+            if (!isPersonName(buf, lt + 1, nameEnd)) {
+                if (!empty) {
+                    open.addLast(namespaceDeclarations(buf, lt, tagEnd));
+                }
+                pos = tagEnd;
+                continue;
+            }
+
+            if (!XMeldSchema.NAMESPACE.equals(namespaceOf(buf, lt + 1, nameEnd, open,
+                    namespaceDeclarations(buf, lt, tagEnd)))) {
+                return Optional.empty();
+            }
+            String declarations = inScope(open);
+            if (!declarations.equals(lastDeclarations)) {
+                wrapperStarts.add(wrapperStart(declaration, declarations));
+                lastDeclarations = declarations;
+            }
+            int wrapper = wrapperStarts.size() - 1;
+            if (empty) {
+                ranges.add(new int[] {lt, tagEnd, wrapper});
+                pos = tagEnd;
+                continue;
+            }
+            byte[] endTag = new byte[nameEnd - lt + 2];
+            endTag[0] = '<';
+            endTag[1] = '/';
+            for (int i = lt + 1; i < nameEnd; i++) {
+                endTag[i - lt + 1] = buf.get(i);
+            }
+            endTag[endTag.length - 1] = '>';
+            int close = indexOf(buf, endTag, tagEnd);
+            if (close < 0) {
+                return Optional.empty();
+            }
+            ranges.add(new int[] {lt, close + endTag.length, wrapper});
+            pos = close + endTag.length;
+        }
+        return Optional.of(new XMeldPersonChunks(xml.duplicate(), Collections.unmodifiableList(wrapperStarts),
+                Collections.unmodifiableList(ranges)));
+    }
+
+    int size() {
+        return ranges.size();
+    }
+
+    /**
+     * @return A parser input for chunk {@code index}; the {@code person} element is the first child of the root.
+     */
+    InputSource source(int index) {
+        int[] range = ranges.get(index);
+        ByteBuffer slice = xml.duplicate();
+        slice.limit(range[1]).position(range[0]);
+        InputStream in = new SequenceInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(wrapperStarts.get(range[2])), new ByteBufferInputStream(slice)),
+                new ByteArrayInputStream(WRAPPER_END));
+        return new InputSource(in);
+    }
+
+    // Namespace declarations of the start tag [from, to); only tags containing "xmlns" are decoded
+    private static List<String> namespaceDeclarations(ByteBuffer buf, int from, int to) {
+        ByteBuffer tagBytes = buf.duplicate();
+        tagBytes.limit(to);
+        if (indexOf(tagBytes, XMLNS, from) < 0) {
+            return List.of();
+        }
+        String tag = new String(copy(buf, from, to), StandardCharsets.UTF_8);
+        List<String> declarations = new ArrayList<>();
+        Matcher m = NAMESPACE_DECLARATION.matcher(tag);
+        while (m.find()) {
+            declarations.add(m.group());
+        }
+        return declarations;
+    }
+
+    // Declarations of all open elements, an inner declaration of a prefix replacing outer ones
+    private static String inScope(Deque<List<String>> open) {
+        Map<String, String> byPrefix = new LinkedHashMap<>();
+        for (List<String> declarations : open) {
+            for (String declaration : declarations) {
+                Matcher m = NAMESPACE_DECLARATION.matcher(declaration);
+                if (m.find()) {
+                    byPrefix.remove(String.valueOf(m.group(1)));
+                    byPrefix.put(String.valueOf(m.group(1)), declaration);
+                }
+            }
+        }
+        return String.join("", byPrefix.values());
+    }
+
+    // Namespace URI of the element name [start, end), resolved against its own and its ancestors' declarations
+    private static String namespaceOf(ByteBuffer buf, int start, int end, Deque<List<String>> open, List<String> own) {
+        String prefix = null;
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == ':') {
+                prefix = ":" + new String(copy(buf, start, i), StandardCharsets.UTF_8);
+                break;
+            }
+        }
+        String uri = null;
+        List<List<String>> scopes = new ArrayList<>(open);
+        scopes.add(own);
+        for (List<String> declarations : scopes) {
+            for (String declaration : declarations) {
+                Matcher m = NAMESPACE_DECLARATION.matcher(declaration);
+                if (m.find() && Objects.equals(m.group(1), prefix)) {
+                    String quoted = m.group(2);
+                    uri = quoted.substring(1, quoted.length() - 1);
+                }
+            }
+        }
+        return uri;
+    }
+
+    private static byte[] wrapperStart(byte[] xmlDeclaration, String namespaceDeclarations) {
+        byte[] wrapper = ("<chunk" + namespaceDeclarations + ">").getBytes(StandardCharsets.UTF_8);
+        byte[] start = new byte[xmlDeclaration.length + wrapper.length];
+        System.arraycopy(xmlDeclaration, 0, start, 0, xmlDeclaration.length);
+        System.arraycopy(wrapper, 0, start, xmlDeclaration.length, wrapper.length);
+        return start;
+    }
+
+    // Name of a start tag whose local part is "person" (optionally prefixed)
+    private static boolean isPersonName(ByteBuffer buf, int start, int end) {
+        int localStart = end - PERSON.length;
+        if (localStart < start) {
+            return false;
+        }
+        if (localStart > start && buf.get(localStart - 1) != ':') {
+            return false;
+        }
+        for (int i = 0; i < PERSON.length; i++) {
+            if (buf.get(localStart + i) != PERSON[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int endOfName(ByteBuffer buf, int pos) {
+        int limit = buf.limit();
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                return pos;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    // Index just after the '>' closing the tag starting at pos, honouring quoted attribute values
+    private static int endOfTag(ByteBuffer buf, int pos) {
+        int limit = buf.limit();
+        byte quote = 0;
+        for (int i = pos; i < limit; i++) {
+            byte b = buf.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int pos, String prefix) {
+        if (pos + prefix.length() > buf.limit()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buf.get(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] copy(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = buf.get(i);
+        }
+        return bytes;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte b, int from) {
+        int limit = buf.limit();
+        for (int i = from; i < limit; i++) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte[] needle, int from) {
+        int last = buf.limit() - needle.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf.get(i + j) != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
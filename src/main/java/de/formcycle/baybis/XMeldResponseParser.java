@@ -1,26 +1,104 @@
 package de.formcycle.baybis;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 /**
- * Parses XMeld 1333 (Result) XML messages and converts the relevant data into JSON.
+ * Parses XMeld 1333 (Result) XML messages into an {@link XMeldResult} and, on request, into JSON.
+ *
+ * <p>Large answers (broad searches returning many {@code person} elements) are split into one
+ * fragment per person and mapped to hits on a {@link ForkJoinPool}. The hit order is preserved.
+ * Parallel mode only kicks in above a hit-count or byte threshold, so small responses are parsed
+ * on the calling thread as before.</p>
  */
 public class XMeldResponseParser {
 
     private static final Logger LOG = LoggerFactory.getLogger(XMeldResponseParser.class);
 
+    public static final int DEFAULT_PARALLEL_HIT_THRESHOLD = 200;
+    public static final int DEFAULT_PARALLEL_BYTE_THRESHOLD = 2 * 1024 * 1024;
+
+    // Lower bound for the encoded size of one person element; smaller documents cannot reach the hit threshold
+    private static final int MIN_PERSON_BYTES = 64;
+    // Number of person fragments a fork-join leaf task parses before it stops splitting
+    private static final int PERSONS_PER_TASK = 8;
+
+    private static final ThreadLocal<DocumentBuilder> CHUNK_BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new BayBisConnectorException("XML parser not available: " + e.getMessage(), "PARSE_ERR", e);
+        }
+    });
+
+    private final boolean includeRawXml;
+    private final int parallelHitThreshold;
+    private final int parallelByteThreshold;
+    private final ForkJoinPool pool;
+    private final ValueInterner interner = ValueInterner.SHARED;
+
+    /**
+     * Creates a parser that keeps the raw response XML in successful results ({@code rawXml}).
+     */
+    public XMeldResponseParser() {
+        this(true);
+    }
+
+    /**
+     * @param includeRawXml Whether successful results keep the raw response XML ({@code rawXml} in JSON).
+     *                      Disable this for production workflows; the XML is usually larger than the hits.
+     */
+    public XMeldResponseParser(boolean includeRawXml) {
+        this(includeRawXml, DEFAULT_PARALLEL_HIT_THRESHOLD, DEFAULT_PARALLEL_BYTE_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param includeRawXml         Whether successful results keep the raw response XML.
+     * @param parallelHitThreshold  Parse in parallel from this many {@code person} elements on
+     *                              ({@link Integer#MAX_VALUE} to disable).
+     * @param parallelByteThreshold Parse in parallel from this response size (bytes) on
+     *                              ({@link Integer#MAX_VALUE} to disable).
+     * @param pool                  Pool the per-person fragments are parsed on.
+     */
+    public XMeldResponseParser(boolean includeRawXml, int parallelHitThreshold, int parallelByteThreshold,
+                               ForkJoinPool pool) {
+        if (parallelHitThreshold < 1 || parallelByteThreshold < 1) {
+            throw new IllegalArgumentException("Parallel thresholds must be positive");
+        }
+        this.includeRawXml = includeRawXml;
+        this.parallelHitThreshold = parallelHitThreshold;
+        this.parallelByteThreshold = parallelByteThreshold;
+        this.pool = Objects.requireNonNull(pool, "pool must not be null");
+    }
+
     /**
      * Parses the XMeld response string into a simplified JSON object.
      * 
@@ -28,22 +106,174 @@ public class XMeldResponseParser {
      * @return JSONObject containing status, hit count, and list of results.
      */
     public JSONObject parseResponse(String xmeldResponse) {
+        return parse(xmeldResponse).toJSONObject();
+    }
+
+    /**
+     * Parses raw XMeld response bytes into a simplified JSON object.
+     *
+     * @param xmeldResponse The raw XMeld 1333 XML bytes.
+     * @return JSONObject containing status, hit count, and list of results.
+     */
+    public JSONObject parseResponse(ByteBuffer xmeldResponse) {
+        return parse(xmeldResponse).toJSONObject();
+    }
+
+    /**
+     * Parses a raw XMeld response stream into a simplified JSON object. The stream is read fully but not closed.
+     *
+     * @param xmeldResponse Stream with the raw XMeld 1333 XML bytes.
+     * @return JSONObject containing status, hit count, and list of results.
+     */
+    public JSONObject parseResponse(InputStream xmeldResponse) {
+        return parse(xmeldResponse).toJSONObject();
+    }
+
+    /**
+     * Parses the XMeld response string into a typed result.
+     *
+     * @param xmeldResponse The raw XMeld 1333 XML string.
+     * @return Typed result with status, hits or error.
+     */
+    public XMeldResult parse(String xmeldResponse) {
+        return traced(() -> utf8Length(xmeldResponse), event -> parseString(xmeldResponse, event));
+    }
+
+    /**
+     * Parses raw XMeld response bytes (as returned by {@link BayBisSoapClient#sendRequest(byte[])}).
+     * The bytes are decoded by the XML parser itself, so no intermediate {@code String} is created;
+     * if configured, {@code rawXml} is decoded only when the result is written as JSON.
+     *
+     * @param xmeldResponse The raw XMeld 1333 XML bytes.
+     * @return Typed result with status, hits or error.
+     */
+    public XMeldResult parse(ByteBuffer xmeldResponse) {
+        Objects.requireNonNull(xmeldResponse, "xmeldResponse must not be null");
+        long size = xmeldResponse.remaining();
+        return traced(() -> size, event -> parseBytes(xmeldResponse, event));
+    }
+
+    /**
+     * Parses a raw XMeld response stream. The stream is read fully but not closed.
+     * Unless {@code rawXml} is kept, the stream is parsed as it is read, i.e. always on the calling thread.
+     *
+     * @param xmeldResponse Stream with the raw XMeld 1333 XML bytes.
+     * @return Typed result with status, hits or error.
+     */
+    public XMeldResult parse(InputStream xmeldResponse) {
+        Objects.requireNonNull(xmeldResponse, "xmeldResponse must not be null");
+        if (includeRawXml) {
+            // The raw bytes have to be kept anyway, so buffer them once
+            ByteBuffer bytes;
+            try {
+                bytes = ByteBuffer.wrap(xmeldResponse.readAllBytes());
+            } catch (IOException e) {
+                LOG.error("Error reading XMeld response stream", e);
+                throw new BayBisConnectorException("Error reading XMeld response: " + e.getMessage(), "PARSE_ERR", e);
+            }
+            return parse(bytes);
+        }
+        // Size is unknown while streaming
+        return traced(() -> -1, event -> {
+            LOG.info("=== Parsing XMeld Response ===");
+            return parse(() -> new InputSource(xmeldResponse), null, null);
+        });
+    }
+
+    /**
+     * Runs a parse and records it as {@link XMeldParseEvent}. Only counts and codes are recorded, no person data.
+     *
+     * @param responseBytes Size of the response in bytes, only asked for if the event is recorded.
+     */
+    private static XMeldResult traced(LongSupplier responseBytes, Function<XMeldParseEvent, XMeldResult> parse) {
+        XMeldParseEvent event = new XMeldParseEvent();
+        event.begin();
+        try {
+            XMeldResult result = parse.apply(event);
+            event.status = result.getStatus().name();
+            event.hitCount = result.getTrefferAnzahl();
+            result.getError().ifPresent(error -> event.errorCode = error.getCode());
+            return result;
+        } catch (BayBisConnectorException e) {
+            event.errorCode = e.getErrorCode();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.responseBytes = responseBytes.getAsLong();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Length of {@code xml} encoded as UTF-8, without encoding it. Unpaired surrogates count as the single
+     * replacement byte the encoder writes.
+     */
+    static long utf8Length(CharSequence xml) {
+        if (xml == null) {
+            return 0;
+        }
+        long bytes = 0;
+        int length = xml.length();
+        for (int i = 0; i < length; i++) {
+            char c = xml.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(xml.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private XMeldResult parseString(String xmeldResponse, XMeldParseEvent event) {
         LOG.info("=== Parsing XMeld Response ===");
         LOG.debug("Response XML length: {} bytes", xmeldResponse != null ? xmeldResponse.length() : 0);
-        
-        JSONObject resultJson = new JSONObject();
-        
+        String rawXml = includeRawXml ? xmeldResponse : null;
+        // Characters are a lower bound for the UTF-8 size; only encode if parallel parsing is possible at all
+        if (xmeldResponse != null && mayParseInParallel(xmeldResponse.length())) {
+            // Re-encoded, so the encoding of the XML declaration does not apply to the bytes
+            Optional<XMeldResult> result = parseInParallel(
+                    ByteBuffer.wrap(xmeldResponse.getBytes(StandardCharsets.UTF_8)), false, rawXml, null, event);
+            if (result.isPresent()) {
+                return result.get();
+            }
+        }
+        return parse(() -> new InputSource(new StringReader(xmeldResponse)), rawXml, null);
+    }
+
+    private XMeldResult parseBytes(ByteBuffer xmeldResponse, XMeldParseEvent event) {
+        LOG.info("=== Parsing XMeld Response ===");
+        LOG.debug("Response XML length: {} bytes", xmeldResponse.remaining());
+        ByteBuffer rawXmlBytes = includeRawXml ? xmeldResponse : null;
+        if (mayParseInParallel(xmeldResponse.remaining())) {
+            Optional<XMeldResult> result = parseInParallel(xmeldResponse, true, null, rawXmlBytes, event);
+            if (result.isPresent()) {
+                return result.get();
+            }
+        }
+        return parse(() -> new InputSource(new ByteBufferInputStream(xmeldResponse)), null, rawXmlBytes);
+    }
+
+    private XMeldResult parse(Supplier<InputSource> source, String rawXml, ByteBuffer rawXmlBytes) {
         try {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             factory.setNamespaceAware(true); // Important for xmeld: prefixes
             DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new InputSource(new StringReader(xmeldResponse)));
+            Document doc = builder.parse(source.get());
 
             // 1. Check for Errors in Header (xink:fehlermeldung)
             NodeList errorNodes = doc.getElementsByTagNameNS("*", "fehlermeldung");
             if (errorNodes.getLength() > 0) {
                 LOG.warn("Error message found in response");
-                resultJson.put("status", "ERROR");
                 
                 // Extract error details if available
                 Element errorElement = (Element) errorNodes.item(0);
@@ -54,134 +284,174 @@ public class XMeldResponseParser {
                 
                 LOG.error("XMeld Error - Code: {}, Message: {}", code, text);
                 
-                JSONObject errorObj = new JSONObject();
-                errorObj.put("code", code);
-                errorObj.put("message", text);
-                resultJson.put("error", errorObj);
-                
-                return resultJson;
+                return XMeldResult.error(new XMeldError(code, text));
             }
 
             // 2. Parse Success Case
-            resultJson.put("status", "SUCCESS");
             LOG.info("Response status: SUCCESS");
             
             // Extract Persons from xmeld:auskunft -> xmeld:person
-            NodeList personNodes = doc.getElementsByTagNameNS("http://www.osci.de/xmeld2511a", "person");
+            NodeList personNodes = doc.getElementsByTagNameNS(XMeldSchema.NAMESPACE, "person");
             // Fallback for namespace flexibility
             if (personNodes.getLength() == 0) {
                 personNodes = doc.getElementsByTagNameNS("*", "person");
             }
 
             int personCount = personNodes.getLength();
-            resultJson.put("trefferAnzahl", personCount);
             LOG.info("Found {} person(s) in response", personCount);
             
-            JSONArray hitsArray = new JSONArray();
+            List<XMeldHit> hits = new ArrayList<>(personCount);
 
-            for (int i = 0; i < personNodes.getLength(); i++) {
+            for (int i = 0; i < personCount; i++) {
                 LOG.debug("Parsing person {}/{}", i + 1, personCount);
-                Element person = (Element) personNodes.item(i);
-                JSONObject hitObj = new JSONObject();
-
-                // Extract Person ID
-                String personId = getDeepValue(person, "identifikationsmerkmal");
-                hitObj.put("id", personId);
-                LOG.debug("Person ID: {}", personId);
-
-                // Extract Name
-                String nachname = getDeepValue(person, "nachname");
-                String vorname = getDeepValue(person, "vornamen");
-                String doktorgrad = getDeepValue(person, "doktorgrad");
-                
-                hitObj.put("nachname", nachname);
-                hitObj.put("vorname", vorname);
-                if (!doktorgrad.isEmpty()) {
-                    hitObj.put("doktorgrad", doktorgrad);
-                }
-                
-                // Extract Birth Data
-                String geburtsdatum = getDeepValue(person, "geburtsdatum");
-                if (!geburtsdatum.isEmpty()) {
-                    hitObj.put("geburtsdatum", geburtsdatum);
-                }
-                
-                // Extract Gender
-                String geschlecht = getDeepValue(person, "geschlecht");
-                if (!geschlecht.isEmpty()) {
-                    hitObj.put("geschlecht", geschlecht);
-                }
-                
-                // Extract Address (Wohnung -> Anschrift)
-                String strasse = getDeepValue(person, "strasse");
-                String hausnummer = getDeepValue(person, "hausnummer");
-                String plz = getDeepValue(person, "postleitzahl");
-                String ort = getDeepValue(person, "ort");
-                
-                if (!strasse.isEmpty() || !hausnummer.isEmpty() || !plz.isEmpty() || !ort.isEmpty()) {
-                    JSONObject adresse = new JSONObject();
-                    adresse.put("strasse", strasse);
-                    adresse.put("hausnummer", hausnummer);
-                    adresse.put("plz", plz);
-                    adresse.put("ort", ort);
-                    hitObj.put("adresse", adresse);
-                }
-                
-                // Extract Status Flags
-                String verzogen = getDeepValue(person, "verzogen");
-                String verringerterDatenumfang = getDeepValue(person, "verringerterDatenumfang");
-                
-                if ("true".equals(verzogen)) {
-                    hitObj.put("verzogen", true);
-                }
-                if ("true".equals(verringerterDatenumfang)) {
-                    hitObj.put("verringerterDatenumfang", true);
-                }
-                
-                // Extract Passport/ID Document Info
-                NodeList ausweisNodes = person.getElementsByTagNameNS("*", "ausweisdokument");
-                if (ausweisNodes.getLength() > 0) {
-                    JSONArray ausweise = new JSONArray();
-                    for (int j = 0; j < ausweisNodes.getLength(); j++) {
-                        Element ausweis = (Element) ausweisNodes.item(j);
-                        JSONObject ausweisObj = new JSONObject();
-                        
-                        String passart = getDeepValue(ausweis, "code");
-                        String seriennummer = getDeepValue(ausweis, "seriennummer");
-                        String gueltigkeitsdauer = getDeepValue(ausweis, "gueltigkeitsdauer");
-                        String behoerde = getDeepValue(ausweis, "behoerde");
-                        String ausstellungsdatum = getDeepValue(ausweis, "ausstellungsdatum");
-                        
-                        if (!passart.isEmpty()) ausweisObj.put("passart", passart);
-                        if (!seriennummer.isEmpty()) ausweisObj.put("seriennummer", seriennummer);
-                        if (!gueltigkeitsdauer.isEmpty()) ausweisObj.put("gueltigkeitsdauer", gueltigkeitsdauer);
-                        if (!behoerde.isEmpty()) ausweisObj.put("behoerde", behoerde);
-                        if (!ausstellungsdatum.isEmpty()) ausweisObj.put("ausstellungsdatum", ausstellungsdatum);
-                        
-                        if (ausweisObj.length() > 0) {
-                            ausweise.put(ausweisObj);
-                        }
-                    }
-                    if (ausweise.length() > 0) {
-                        hitObj.put("ausweisdokumente", ausweise);
-                    }
-                }
-
-                hitsArray.put(hitObj);
+                hits.add(parsePerson((Element) personNodes.item(i)));
             }
             
-            resultJson.put("treffer", hitsArray);
-            resultJson.put("rawXml", xmeldResponse); // Optional, for debugging
-            
             LOG.info("=== Parsing Complete ===");
-            LOG.info("Result: {} person(s) successfully parsed into JSON", personCount);
+            LOG.info("Result: {} person(s) successfully parsed", personCount);
+
+            return XMeldResult.success(hits, rawXml, rawXmlBytes);
 
         } catch (Exception e) {
             LOG.error("Error parsing XMeld response", e);
             throw new BayBisConnectorException("Error parsing XMeld response: " + e.getMessage(), "PARSE_ERR", e);
         }
+    }
+
+    private boolean mayParseInParallel(int size) {
+        return size >= parallelByteThreshold || size / MIN_PERSON_BYTES >= parallelHitThreshold;
+    }
+
+    /**
+     * @return The result, or empty if the response is below the thresholds, not splittable
+     *         (e.g. an error message) or a fragment could not be parsed; it then has to be parsed as a whole.
+     */
+    private Optional<XMeldResult> parseInParallel(ByteBuffer xml, boolean keepDeclaration, String rawXml,
+                                                  ByteBuffer rawXmlBytes, XMeldParseEvent event) {
+        Optional<XMeldPersonChunks> split = XMeldPersonChunks.split(xml, keepDeclaration);
+        if (split.isEmpty()) {
+            return Optional.empty();
+        }
+        XMeldPersonChunks chunks = split.get();
+        int personCount = chunks.size();
+        if (personCount == 0 || (personCount < parallelHitThreshold && xml.remaining() < parallelByteThreshold)) {
+            return Optional.empty();
+        }
+
+        XMeldHit[] hits = new XMeldHit[personCount];
+        try {
+            pool.invoke(new PersonChunkTask(chunks, hits, 0, personCount));
+        } catch (RuntimeException e) {
+            // The split is a heuristic; the sequential parse decides whether the response is valid
+            LOG.debug("Parallel parse failed, parsing the response as a whole: {}", e.getMessage());
+            return Optional.empty();
+        }
+
+        event.parallel = true;
+        LOG.info("Response status: SUCCESS");
+        LOG.info("Found {} person(s) in response, parsed in parallel (parallelism {})", personCount, pool.getParallelism());
+        LOG.info("=== Parsing Complete ===");
+        LOG.info("Result: {} person(s) successfully parsed", personCount);
+
+        return Optional.of(XMeldResult.success(Arrays.asList(hits), rawXml, rawXmlBytes));
+    }
+
+    private XMeldHit parseChunk(XMeldPersonChunks chunks, int index) {
+        DocumentBuilder builder = CHUNK_BUILDER.get();
+        try {
+            Document doc = builder.parse(chunks.source(index));
+            Node person = doc.getDocumentElement().getFirstChild();
+            while (person != null && person.getNodeType() != Node.ELEMENT_NODE) {
+                person = person.getNextSibling();
+            }
+            if (person == null) {
+                throw new BayBisConnectorException("Empty person fragment " + index, "PARSE_ERR");
+            }
+            return parsePerson((Element) person);
+        } catch (SAXException | IOException e) {
+            throw new BayBisConnectorException("Error parsing person " + (index + 1) + ": " + e.getMessage(), "PARSE_ERR", e);
+        } finally {
+            builder.reset();
+        }
+    }
+
+    // Maps a range of person fragments to hits; each task writes only its own slots, so order is kept
+    private final class PersonChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final XMeldPersonChunks chunks;
+        private final XMeldHit[] hits;
+        private final int from;
+        private final int to;
+
+        PersonChunkTask(XMeldPersonChunks chunks, XMeldHit[] hits, int from, int to) {
+            this.chunks = chunks;
+            this.hits = hits;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PERSONS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    hits[i] = parseChunk(chunks, i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new PersonChunkTask(chunks, hits, from, mid), new PersonChunkTask(chunks, hits, mid, to));
+        }
+    }
+
+    private XMeldHit parsePerson(Element person) {
+        // One pass over the person subtree, fields as bound in xmeld-bindings.txt
+        String[] fields = new String[XMeldPersonFields.FIELD_COUNT];
+        List<Element> ausweisElements = new ArrayList<>(2);
+        XMeldPersonFields.extract(person, fields, ausweisElements);
+
+        String personId = fields[XMeldPersonFields.IDENTIFIKATIONSMERKMAL];
+        LOG.debug("Person ID: {}", personId);
+
+        // Extract Gender (code-list key)
+        String geschlecht = interner.intern(fields[XMeldPersonFields.GESCHLECHT]);
+        
+        // Extract Address (Wohnung -> Anschrift); place names repeat a lot across hits
+        String strasse = interner.intern(fields[XMeldPersonFields.STRASSE]);
+        String hausnummer = fields[XMeldPersonFields.HAUSNUMMER];
+        String plz = interner.intern(fields[XMeldPersonFields.POSTLEITZAHL]);
+        String ort = interner.intern(fields[XMeldPersonFields.ORT]);
+        
+        XMeldAddress adresse = null;
+        if (!strasse.isEmpty() || !hausnummer.isEmpty() || !plz.isEmpty() || !ort.isEmpty()) {
+            adresse = new XMeldAddress(strasse, hausnummer, plz, ort);
+        }
+        
+        // Extract Status Flags
+        boolean verzogen = "true".equals(fields[XMeldPersonFields.VERZOGEN]);
+        boolean verringerterDatenumfang = "true".equals(fields[XMeldPersonFields.VERRINGERTER_DATENUMFANG]);
         
-        return resultJson;
+        // Extract Passport/ID Document Info
+        List<XMeldIdDocument> ausweise = new ArrayList<>();
+        String[] ausweisFields = new String[XMeldIdDocumentFields.FIELD_COUNT];
+        for (Element ausweis : ausweisElements) {
+            Arrays.fill(ausweisFields, null);
+            XMeldIdDocumentFields.extract(ausweis, ausweisFields);
+            XMeldIdDocument ausweisDoc = new XMeldIdDocument(
+                    interner.intern(ausweisFields[XMeldIdDocumentFields.CODE]),
+                    ausweisFields[XMeldIdDocumentFields.SERIENNUMMER],
+                    ausweisFields[XMeldIdDocumentFields.GUELTIGKEITSDAUER],
+                    interner.intern(ausweisFields[XMeldIdDocumentFields.BEHOERDE]),
+                    ausweisFields[XMeldIdDocumentFields.AUSSTELLUNGSDATUM]);
+            if (!ausweisDoc.isEmpty()) {
+                ausweise.add(ausweisDoc);
+            }
+        }
+
+        return new XMeldHit(personId, fields[XMeldPersonFields.NACHNAME], fields[XMeldPersonFields.VORNAMEN],
+                fields[XMeldPersonFields.DOKTORGRAD], fields[XMeldPersonFields.GEBURTSDATUM], geschlecht,
+                adresse, verzogen, verringerterDatenumfang, ausweise);
     }
 
     // Helper to safely get text content of a child element
@@ -192,20 +462,4 @@ public class XMeldResponseParser {
         }
         return "";
     }
-    
-    // Helper to get value from structure like <parent><child>value</child></parent>
-    private String getNestedValue(Element parent, String parentTag, String childTag) {
-        NodeList parents = parent.getElementsByTagNameNS("*", parentTag);
-        if (parents.getLength() > 0) {
-            Element p = (Element) parents.item(0);
-            return getTextContent(p, childTag);
-        }
-        return "";
-    }
-
-    // Helper to search for a tag anywhere in the subtree (useful if exact path varies)
-    private String getDeepValue(Element parent, String tagName) {
-        String value = getTextContent(parent, tagName);
-        return value != null ? value.trim() : "";
-    }
 }
@@ -0,0 +1,157 @@
+package de.formcycle.baybis;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Immutable, typed result of {@link XMeldResponseParser}.
+ * JSON is only produced on demand via {@link #writeJson(Writer)} / {@link #toJson()}.
+ */
+public final class XMeldResult {
+
+    public enum Status { SUCCESS, ERROR }
+
+    private final Status status;
+    private final List<XMeldHit> treffer;
+    private final XMeldError error;
+    // Only one of these is set, and only if the parser was configured to keep the raw XML
+    private final String rawXml;
+    private final ByteBuffer rawXmlBytes;
+    // Match score per hit (same order as treffer) once ranked by XMeldHitRanker, else null
+    private final int[] matchScores;
+
+    private XMeldResult(Status status, List<XMeldHit> treffer, XMeldError error, String rawXml, ByteBuffer rawXmlBytes,
+                        int[] matchScores) {
+        this.status = status;
+        this.treffer = treffer;
+        this.error = error;
+        this.rawXml = rawXml;
+        this.rawXmlBytes = rawXmlBytes;
+        this.matchScores = matchScores;
+    }
+
+    static XMeldResult success(List<XMeldHit> treffer, String rawXml, ByteBuffer rawXmlBytes) {
+        return new XMeldResult(Status.SUCCESS, List.copyOf(treffer), null, rawXml,
+                rawXmlBytes != null ? rawXmlBytes.asReadOnlyBuffer() : null, null);
+    }
+
+    static XMeldResult error(XMeldError error) {
+        return new XMeldResult(Status.ERROR, List.of(), Objects.requireNonNull(error), null, null, null);
+    }
+
+    /**
+     * @param treffer     The hits of {@code result}, best match first.
+     * @param matchScores Score of each hit in {@code treffer}.
+     */
+    static XMeldResult ranked(XMeldResult result, List<XMeldHit> treffer, int[] matchScores) {
+        return new XMeldResult(result.status, List.copyOf(treffer), result.error, result.rawXml, result.rawXmlBytes,
+                matchScores);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getTrefferAnzahl() {
+        return treffer.size();
+    }
+
+    public List<XMeldHit> getTreffer() {
+        return treffer;
+    }
+
+    public Optional<XMeldError> getError() {
+        return Optional.ofNullable(error);
+    }
+
+    /**
+     * @return Whether the hits were sorted by {@link XMeldHitRanker} and carry match scores.
+     */
+    public boolean isRanked() {
+        return matchScores != null;
+    }
+
+    /**
+     * @return Match score (0-100) of the hit at {@code index} in {@link #getTreffer()}.
+     * @throws IllegalStateException if the result is not ranked.
+     */
+    public int getMatchScore(int index) {
+        if (matchScores == null) {
+            throw new IllegalStateException("Result is not ranked");
+        }
+        return matchScores[index];
+    }
+
+    public boolean hasRawXml() {
+        return rawXml != null || rawXmlBytes != null;
+    }
+
+    /**
+     * Streams the JSON representation to {@code out}. The layout matches what
+     * {@link XMeldResponseParser#parseResponse(String)} has always returned; ranked results
+     * additionally carry {@code rang} and {@code matchScore} per hit.
+     */
+    public void writeJson(Writer out) throws IOException {
+        writeJson(new JsonStreamWriter(out));
+        out.flush();
+    }
+
+    private void writeJson(JsonStreamWriter json) throws IOException {
+        json.beginObject().name("status").value(status.name());
+        if (status == Status.ERROR) {
+            json.name("error");
+            error.writeJson(json);
+        } else {
+            json.name("trefferAnzahl").value(treffer.size());
+            json.name("treffer").beginArray();
+            for (int i = 0; i < treffer.size(); i++) {
+                if (matchScores != null) {
+                    treffer.get(i).writeJson(json, i + 1, matchScores[i]);
+                } else {
+                    treffer.get(i).writeJson(json);
+                }
+            }
+            json.endArray();
+            if (rawXml != null) {
+                json.name("rawXml").value(rawXml); // Optional, for debugging
+            } else if (rawXmlBytes != null) {
+                json.name("rawXml").value(rawXmlBytes);
+            }
+        }
+        json.endObject();
+    }
+
+    /**
+     * @return Compact JSON string, e.g. for storing in a Formcycle process variable.
+     */
+    public String toJson() {
+        StringWriter out = new StringWriter();
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter does not throw
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return The result as {@code org.json} tree, for callers that still work on {@link JSONObject}.
+     */
+    public JSONObject toJSONObject() {
+        JsonStreamWriter json = new JsonStreamWriter();
+        try {
+            writeJson(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // the tree writer does not throw
+        }
+        return (JSONObject) json.getRoot();
+    }
+}
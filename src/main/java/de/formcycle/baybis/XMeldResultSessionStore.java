@@ -0,0 +1,508 @@
+package de.formcycle.baybis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps parsed search results for a short time under an opaque session token, so follow-up
+ * requests (details of one person, ID documents, paging, re-sorting) are answered locally instead
+ * of sending the same search to BayBIS again.
+ *
+ * <p>Hits are stored off-heap, each hit encrypted on its own (AES-GCM, key generated per store
+ * and never leaving memory), so a page or a single hit is decrypted without touching the rest.
+ * Only the hit order and match scores stay on the heap in plain form; the raw XML of a result is
+ * not stored. Sessions expire a fixed time after they were created, regardless of access. The
+ * total size of the encrypted data is capped; the least recently used sessions are evicted to make
+ * room. Expired, evicted and invalidated sessions are overwritten with zeros before they are
+ * released.</p>
+ *
+ * <p>Hits returned by the getters are ordinary objects; callers should not hold them longer than
+ * the request they serve.</p>
+ */
+public final class XMeldResultSessionStore implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XMeldResultSessionStore.class);
+
+    private static final int TOKEN_BYTES = 24;
+    private static final int KEY_BITS = 256;
+    private static final int TAG_BITS = 128;
+    private static final int TAG_BYTES = TAG_BITS / 8;
+    private static final byte[] ZEROS = new byte[4096];
+    private static final long SWEEP_INTERVAL_MILLIS = 1_000;
+
+    private final Duration ttl;
+    private final long maxBytes;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKey key;
+    private final Cipher cipher;
+    // Access order, eldest first: the eviction order
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true); // guarded by this
+    private long usedBytes; // guarded by this
+    private boolean closed; // guarded by this
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * @param ttl      Lifetime of a session, e.g. a few minutes.
+     * @param maxBytes Cap for the stored (encrypted) hit data of all sessions.
+     */
+    public XMeldResultSessionStore(Duration ttl, long maxBytes) {
+        this(ttl, maxBytes, Clock.systemUTC(), true);
+    }
+
+    XMeldResultSessionStore(Duration ttl, long maxBytes, Clock clock, boolean sweep) {
+        this.ttl = Objects.requireNonNull(ttl, "ttl must not be null");
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.clock = Objects.requireNonNull(clock, "clock must not be null");
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(KEY_BITS, random);
+            this.key = generator.generateKey();
+            this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new BayBisConnectorException("AES-GCM not available: " + e.getMessage(), "CONFIG_ERR", e);
+        }
+        if (sweep) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "baybis-session-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::runSweep, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+        LOG.info("XMeld result session store started: ttl {} s, max {} KiB", ttl.getSeconds(), maxBytes / 1024);
+    }
+
+    /**
+     * Stores the hits (and match scores, if ranked) of a successful result.
+     *
+     * @return The session token, 32 URL-safe characters.
+     * @throws IllegalArgumentException if {@code result} is an error.
+     * @throws BayBisConnectorException ({@code SESSION_TOO_LARGE}) if the result alone exceeds the cap,
+     *                                  ({@code SESSION_CLOSED}) if the store is closed.
+     */
+    public String put(XMeldResult result) {
+        Objects.requireNonNull(result, "result must not be null");
+        if (result.getStatus() != XMeldResult.Status.SUCCESS) {
+            throw new IllegalArgumentException("Only successful results can be stored");
+        }
+        List<XMeldHit> hits = result.getTreffer();
+        int[] scores = null;
+        if (result.isRanked()) {
+            scores = new int[hits.size()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = result.getMatchScore(i);
+            }
+        }
+
+        HitEncoder plain = new HitEncoder();
+        int[] plainOffsets = new int[hits.size() + 1];
+        for (int i = 0; i < hits.size(); i++) {
+            plain.encode(hits.get(i));
+            plainOffsets[i + 1] = plain.length;
+        }
+        long size = plain.length + (long) TAG_BYTES * hits.size();
+        if (size > maxBytes) {
+            plain.wipe();
+            throw new BayBisConnectorException("Result of " + hits.size() + " hit(s) exceeds the session store cap",
+                    "SESSION_TOO_LARGE");
+        }
+
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        byte[] nonce = new byte[8];
+        random.nextBytes(tokenBytes);
+        random.nextBytes(nonce);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        ByteBuffer data = ByteBuffer.allocateDirect((int) size);
+        int[] offsets = new int[hits.size() + 1];
+        try {
+            synchronized (this) {
+                if (closed) {
+                    throw new BayBisConnectorException("Session store is closed", "SESSION_CLOSED");
+                }
+                for (int i = 0; i < hits.size(); i++) {
+                    cipher.init(Cipher.ENCRYPT_MODE, key, iv(nonce, i));
+                    ByteBuffer in = ByteBuffer.wrap(plain.bytes, plainOffsets[i], plainOffsets[i + 1] - plainOffsets[i]);
+                    cipher.doFinal(in, data);
+                    offsets[i + 1] = data.position();
+                }
+                removeExpired();
+                while (usedBytes + size > maxBytes) {
+                    Iterator<Map.Entry<String, Session>> eldest = sessions.entrySet().iterator();
+                    Map.Entry<String, Session> evicted = eldest.next();
+                    eldest.remove();
+                    release(evicted.getValue());
+                    LOG.debug("Evicted session {} to stay below the cap", mask(evicted.getKey()));
+                }
+                sessions.put(token, new Session(data, offsets, scores, nonce,
+                        clock.millis() + ttl.toMillis()));
+                usedBytes += size;
+            }
+        } catch (GeneralSecurityException e) {
+            wipe(data);
+            throw new BayBisConnectorException("Could not encrypt result: " + e.getMessage(), "INTERNAL_ERR", e);
+        } catch (RuntimeException e) {
+            wipe(data);
+            throw e;
+        } finally {
+            plain.wipe();
+        }
+        LOG.debug("Stored {} hit(s) ({} bytes) as session {}", hits.size(), size, mask(token));
+        return token;
+    }
+
+    /**
+     * @return All hits of the session in stored order, empty if the token is unknown or expired.
+     */
+    public Optional<XMeldResult> get(String token) {
+        OptionalInt count = getHitCount(token);
+        if (count.isEmpty()) {
+            return Optional.empty();
+        }
+        return read(token, 0, count.getAsInt()).map(page -> page.scores != null
+                ? XMeldResult.ranked(XMeldResult.success(page.hits, null, null), page.hits, page.scores)
+                : XMeldResult.success(page.hits, null, null));
+    }
+
+    /**
+     * Decrypts only the requested range, e.g. one page of a long list or a single hit for the detail view.
+     *
+     * @return Up to {@code limit} hits from {@code offset} on (fewer at the end of the list), empty if
+     *         the token is unknown or expired.
+     */
+    public Optional<List<XMeldHit>> getHits(String token, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+        return read(token, offset, limit).map(page -> page.hits);
+    }
+
+    /**
+     * @return The number of hits of the session, empty if the token is unknown or expired.
+     */
+    public synchronized OptionalInt getHitCount(String token) {
+        Session session = live(token);
+        return session != null ? OptionalInt.of(session.offsets.length - 1) : OptionalInt.empty();
+    }
+
+    /**
+     * Ends a session early (e.g. when the user leaves the result view) and wipes its data.
+     */
+    public synchronized void invalidate(String token) {
+        Session session = token != null ? sessions.remove(token) : null;
+        if (session != null) {
+            release(session);
+            LOG.debug("Invalidated session {}", mask(token));
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Wipes all sessions and stops the sweeper. Later calls of {@link #put} fail.
+     */
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sessions.values().forEach(this::release);
+            sessions.clear();
+        }
+        LOG.info("XMeld result session store closed");
+    }
+
+    /**
+     * Wipes the expired sessions; runs every second in the background.
+     */
+    synchronized void removeExpired() {
+        long now = clock.millis();
+        for (Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Session> entry = it.next();
+            if (entry.getValue().expiresAtMillis <= now) {
+                it.remove();
+                release(entry.getValue());
+                LOG.debug("Session {} expired", mask(entry.getKey()));
+            }
+        }
+    }
+
+    private void runSweep() {
+        try {
+            removeExpired();
+        } catch (RuntimeException e) { // an exception would cancel all further runs
+            LOG.error("Unexpected error in XMeld result session sweeper", e);
+        }
+    }
+
+    private synchronized Optional<Page> read(String token, int offset, int limit) {
+        Session session = live(token);
+        if (session == null) {
+            return Optional.empty();
+        }
+        int count = session.offsets.length - 1;
+        int from = Math.min(offset, count);
+        int to = (int) Math.min((long) from + limit, count);
+        List<XMeldHit> hits = new ArrayList<>(to - from);
+        byte[] plain = new byte[0];
+        try {
+            for (int i = from; i < to; i++) {
+                int length = session.offsets[i + 1] - session.offsets[i];
+                if (plain.length < length) {
+                    Arrays.fill(plain, (byte) 0);
+                    plain = new byte[length];
+                }
+                ByteBuffer in = session.data.duplicate();
+                in.limit(session.offsets[i + 1]).position(session.offsets[i]);
+                cipher.init(Cipher.DECRYPT_MODE, key, iv(session.nonce, i));
+                int plainLength = cipher.doFinal(in, ByteBuffer.wrap(plain));
+                hits.add(new HitDecoder(plain, plainLength).decode());
+            }
+        } catch (GeneralSecurityException e) {
+            throw new BayBisConnectorException("Could not decrypt session: " + e.getMessage(), "INTERNAL_ERR", e);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+        int[] scores = session.scores != null ? Arrays.copyOfRange(session.scores, from, to) : null;
+        return Optional.of(new Page(hits, scores));
+    }
+
+    // Unknown and expired tokens look the same to the caller
+    private Session live(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return null;
+        }
+        if (session.expiresAtMillis <= clock.millis()) {
+            sessions.remove(token);
+            release(session);
+            return null;
+        }
+        return session;
+    }
+
+    private void release(Session session) {
+        wipe(session.data);
+        usedBytes -= session.data.capacity();
+    }
+
+    private static void wipe(ByteBuffer buffer) {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put(ZEROS, 0, Math.min(ZEROS.length, buffer.remaining()));
+        }
+        buffer.clear();
+    }
+
+    // Unique per hit: random per-session nonce and the hit index
+    private static GCMParameterSpec iv(byte[] nonce, int index) {
+        byte[] iv = Arrays.copyOf(nonce, 12);
+        iv[8] = (byte) (index >>> 24);
+        iv[9] = (byte) (index >>> 16);
+        iv[10] = (byte) (index >>> 8);
+        iv[11] = (byte) index;
+        return new GCMParameterSpec(TAG_BITS, iv);
+    }
+
+    private static String mask(String token) {
+        return token.substring(0, 4) + "...";
+    }
+
+    private static final class Session {
+        final ByteBuffer data;
+        // Hit i is data[offsets[i], offsets[i + 1])
+        final int[] offsets;
+        final int[] scores;
+        final byte[] nonce;
+        final long expiresAtMillis;
+
+        Session(ByteBuffer data, int[] offsets, int[] scores, byte[] nonce, long expiresAtMillis) {
+            this.data = data;
+            this.offsets = offsets;
+            this.scores = scores;
+            this.nonce = nonce;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private static final class Page {
+        final List<XMeldHit> hits;
+        final int[] scores;
+
+        Page(List<XMeldHit> hits, int[] scores) {
+            this.hits = hits;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     * Compact binary form of a hit: length-prefixed UTF-8 strings and a flag byte.
+     * Grows by copying, wiping the old buffer.
+     */
+    private static final class HitEncoder {
+        private static final int HAS_ADDRESS = 1;
+        private static final int VERZOGEN = 2;
+        private static final int VERRINGERTER_DATENUMFANG = 4;
+
+        byte[] bytes = new byte[1024];
+        int length;
+
+        void encode(XMeldHit hit) {
+            XMeldAddress address = hit.getAdresse().orElse(null);
+            writeByte((address != null ? HAS_ADDRESS : 0)
+                    | (hit.isVerzogen() ? VERZOGEN : 0)
+                    | (hit.isVerringerterDatenumfang() ? VERRINGERTER_DATENUMFANG : 0));
+            writeString(hit.getId());
+            writeString(hit.getNachname());
+            writeString(hit.getVorname());
+            writeString(hit.getDoktorgrad());
+            writeString(hit.getGeburtsdatum());
+            writeString(hit.getGeschlecht());
+            if (address != null) {
+                writeString(address.getStrasse());
+                writeString(address.getHausnummer());
+                writeString(address.getPlz());
+                writeString(address.getOrt());
+            }
+            writeVarInt(hit.getAusweisdokumente().size());
+            for (XMeldIdDocument document : hit.getAusweisdokumente()) {
+                writeString(document.getPassart());
+                writeString(document.getSeriennummer());
+                writeString(document.getGueltigkeitsdauer());
+                writeString(document.getBehoerde());
+                writeString(document.getAusstellungsdatum());
+            }
+        }
+
+        void wipe() {
+            Arrays.fill(bytes, (byte) 0);
+        }
+
+        private void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+            Arrays.fill(utf8, (byte) 0);
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        private void ensure(int more) {
+            if (length + more > bytes.length) {
+                byte[] grown = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+                wipe();
+                bytes = grown;
+            }
+        }
+    }
+
+    private static final class HitDecoder {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        HitDecoder(byte[] bytes, int end) {
+            this.bytes = bytes;
+            this.end = end;
+        }
+
+        XMeldHit decode() {
+            int flags = bytes[position++];
+            String id = readString();
+            String nachname = readString();
+            String vorname = readString();
+            String doktorgrad = readString();
+            String geburtsdatum = readString();
+            String geschlecht = readString();
+            XMeldAddress address = null;
+            if ((flags & HitEncoder.HAS_ADDRESS) != 0) {
+                address = new XMeldAddress(readString(), readString(), readString(), readString());
+            }
+            int documentCount = readVarInt();
+            List<XMeldIdDocument> documents = new ArrayList<>(documentCount);
+            for (int i = 0; i < documentCount; i++) {
+                documents.add(new XMeldIdDocument(readString(), readString(), readString(), readString(), readString()));
+            }
+            if (position != end) {
+                throw new IllegalStateException("Corrupt session entry");
+            }
+            return new XMeldHit(id, nachname, vorname, doktorgrad, geburtsdatum, geschlecht, address,
+                    (flags & HitEncoder.VERZOGEN) != 0, (flags & HitEncoder.VERRINGERTER_DATENUMFANG) != 0, documents);
+        }
+
+        private String readString() {
+            int length = readVarInt();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package de.formcycle.baybis;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Search criteria of an XMeld 1332 request, used by {@link XMeldHitRanker} to score hits.
+ *
+ * <p>Normalised ({@link MatchKeys#fold}) and phonetic (Kölner Phonetik) keys are computed once
+ * here, so scoring a hit only has to key the hit itself. Empty values mean "not searched for".</p>
+ */
+public final class XMeldSearchCriteria {
+
+    private final String nachname;
+    private final String vorname;
+    private final String geburtsdatum;
+    private final String plz;
+    private final String ort;
+    private final String strasse;
+
+    // Precomputed keys
+    final Tokens nachnameKeys;
+    final Tokens vornameKeys;
+    final int packedGeburtsdatum;
+    final String foldedPlz;
+    final String foldedOrt;
+    final String foldedStrasse;
+
+    /**
+     * @param geburtsdatum ISO date, or a partially known one ({@code 1992-02}, {@code 1992}).
+     */
+    public XMeldSearchCriteria(String nachname, String vorname, String geburtsdatum,
+                               String plz, String ort, String strasse) {
+        this.nachname = Objects.requireNonNullElse(nachname, "").trim();
+        this.vorname = Objects.requireNonNullElse(vorname, "").trim();
+        this.geburtsdatum = Objects.requireNonNullElse(geburtsdatum, "").trim();
+        this.plz = Objects.requireNonNullElse(plz, "").trim();
+        this.ort = Objects.requireNonNullElse(ort, "").trim();
+        this.strasse = Objects.requireNonNullElse(strasse, "").trim();
+
+        this.nachnameKeys = new Tokens(this.nachname);
+        this.vornameKeys = new Tokens(this.vorname);
+        this.packedGeburtsdatum = MatchKeys.packDate(this.geburtsdatum);
+        this.foldedPlz = fold(this.plz);
+        this.foldedOrt = fold(this.ort);
+        this.foldedStrasse = fold(this.strasse);
+    }
+
+    /**
+     * Reads the criteria from the {@code suchprofil} of an XMeld 1332 request.
+     *
+     * @throws BayBisConnectorException ({@code INPUT_ERR}) if the request cannot be parsed.
+     */
+    public static XMeldSearchCriteria fromRequest(byte[] xmeldXml) {
+        Objects.requireNonNull(xmeldXml, "xmeldXml must not be null");
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            Document doc = factory.newDocumentBuilder().parse(new InputSource(new ByteArrayInputStream(xmeldXml)));
+            NodeList profiles = doc.getElementsByTagNameNS("*", "suchprofil");
+            if (profiles.getLength() == 0) {
+                return new XMeldSearchCriteria("", "", "", "", "", "");
+            }
+            String[] fields = new String[XMeldSuchprofilFields.FIELD_COUNT];
+            XMeldSuchprofilFields.extract((Element) profiles.item(0), fields);
+            // Requests written outside the connector often use ort instead of wohnort
+            String wohnort = fields[XMeldSuchprofilFields.WOHNORT];
+            return new XMeldSearchCriteria(
+                    fields[XMeldSuchprofilFields.NACHNAME],
+                    fields[XMeldSuchprofilFields.VORNAMEN],
+                    fields[XMeldSuchprofilFields.GEBURTSDATUM],
+                    fields[XMeldSuchprofilFields.POSTLEITZAHL],
+                    wohnort.isEmpty() ? fields[XMeldSuchprofilFields.ORT] : wohnort,
+                    fields[XMeldSuchprofilFields.STRASSE]);
+        } catch (Exception e) {
+            throw new BayBisConnectorException("Could not read search criteria: " + e.getMessage(), "INPUT_ERR", e);
+        }
+    }
+
+    public String getNachname() {
+        return nachname;
+    }
+
+    public String getVorname() {
+        return vorname;
+    }
+
+    public String getGeburtsdatum() {
+        return geburtsdatum;
+    }
+
+    public String getPlz() {
+        return plz;
+    }
+
+    public String getOrt() {
+        return ort;
+    }
+
+    public String getStrasse() {
+        return strasse;
+    }
+
+    boolean hasAddress() {
+        return !foldedPlz.isEmpty() || !foldedOrt.isEmpty() || !foldedStrasse.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return nachnameKeys.count == 0 && vornameKeys.count == 0 && packedGeburtsdatum == 0 && !hasAddress();
+    }
+
+    private static String fold(String value) {
+        char[] buffer = new char[value.length() * 2];
+        return new String(buffer, 0, MatchKeys.fold(value, buffer));
+    }
+
+    /**
+     * Folded and phonetic key per name token ("Barbara Carina" has two).
+     */
+    static final class Tokens {
+        final int count;
+        final char[][] folded;
+        final char[][] phonetic;
+
+        Tokens(String value) {
+            char[] buffer = new char[value.length() * 2];
+            int length = MatchKeys.fold(value, buffer);
+            char[][] foldedTokens = new char[length / 2 + 1][];
+            char[][] phoneticTokens = new char[foldedTokens.length][];
+            char[] code = new char[buffer.length + 1];
+            int n = 0;
+            int start = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i == length || buffer[i] == ' ') {
+                    if (i > start) {
+                        foldedTokens[n] = Arrays.copyOfRange(buffer, start, i);
+                        phoneticTokens[n] = Arrays.copyOf(code, MatchKeys.koelnerPhonetik(buffer, start, i, code));
+                        n++;
+                    }
+                    start = i + 1;
+                }
+            }
+            this.count = n;
+            this.folded = Arrays.copyOf(foldedTokens, n);
+            this.phonetic = Arrays.copyOf(phoneticTokens, n);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package de.formcycle.baybis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BayBisEndpointGroupTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private BayBisEndpointGroup group(String... urls) {
+        return new BayBisEndpointGroup(List.of(urls), 2, Duration.ofSeconds(10), clock::get);
+    }
+
+    @Test
+    public void testPrefersLowerLatency() {
+        BayBisEndpointGroup group = group("http://a/XoevService", "http://b/XoevService");
+        BayBisEndpointGroup.Endpoint a = group.getEndpoints().get(0);
+        BayBisEndpointGroup.Endpoint b = group.getEndpoints().get(1);
+        a.recordSuccess(Duration.ofMillis(900).toNanos());
+        b.recordSuccess(Duration.ofMillis(80).toNanos());
+
+        // With two endpoints power-of-two-choices always compares both
+        for (int i = 0; i < 20; i++) {
+            Assert.assertSame(b, group.select(Set.of()));
+        }
+        Assert.assertEquals(80.0, b.getLatencyMillis(), 0.001);
+    }
+
+    @Test
+    public void testFailingEndpointIsTakenOutAndRecovers() {
+        BayBisEndpointGroup group = group("http://a/XoevService", "http://b/XoevService");
+        BayBisEndpointGroup.Endpoint a = group.getEndpoints().get(0);
+        BayBisEndpointGroup.Endpoint b = group.getEndpoints().get(1);
+        b.recordSuccess(Duration.ofMillis(500).toNanos());
+
+        a.recordFailure();
+        Assert.assertTrue("One failure is below the threshold", a.isHealthy());
+        a.recordFailure();
+        Assert.assertFalse(a.isHealthy());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertSame(b, group.select(Set.of()));
+        }
+
+        // Cooldown over: a gets traffic again, a success restores it
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        Assert.assertSame(a, group.select(Set.of(b)));
+        a.recordSuccess(Duration.ofMillis(50).toNanos());
+        Assert.assertTrue(a.isHealthy());
+    }
+
+    @Test
+    public void testRecoveringEndpointGetsOneTrialRequest() {
+        BayBisEndpointGroup group = group("http://a/XoevService", "http://b/XoevService");
+        BayBisEndpointGroup.Endpoint a = group.getEndpoints().get(0);
+        BayBisEndpointGroup.Endpoint b = group.getEndpoints().get(1);
+        b.recordSuccess(Duration.ofMillis(500).toNanos());
+        a.recordFailure();
+        a.recordFailure();
+
+        // Cooldown over: one trial request, everything else stays on b while it runs
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        Assert.assertSame(a, group.select(Set.of()));
+        a.requestStarted();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertSame(b, group.select(Set.of()));
+        }
+
+        // Still down: out again for twice the cooldown, without a burst of traffic
+        a.recordFailure();
+        a.requestFinished();
+        Assert.assertFalse(a.isHealthy());
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+        Assert.assertSame(b, group.select(Set.of()));
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        Assert.assertSame(a, group.select(Set.of()));
+        Assert.assertSame(b, group.select(Set.of()));
+
+        // A successful trial restores it
+        a.recordSuccess(Duration.ofMillis(50).toNanos());
+        a.requestFinished();
+        Assert.assertTrue(a.isHealthy());
+        Assert.assertSame(a, group.select(Set.of()));
+    }
+
+    @Test
+    public void testAllDownStillReturnsAnEndpoint() {
+        BayBisEndpointGroup group = group("http://a/XoevService");
+        BayBisEndpointGroup.Endpoint a = group.getEndpoints().get(0);
+        a.recordFailure();
+        a.recordFailure();
+
+        Assert.assertSame(a, group.select(Set.of()));
+    }
+
+    @Test
+    public void testEmptyGroupIsRejected() {
+        try {
+            new BayBisEndpointGroup(List.of());
+            Assert.fail("Should throw exception for empty endpoint list");
+        } catch (BayBisConnectorException e) {
+            Assert.assertEquals("CONFIG_ERR", e.getErrorCode());
+        }
+    }
+}
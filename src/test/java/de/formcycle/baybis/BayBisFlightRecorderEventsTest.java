@@ -0,0 +1,189 @@
+package de.formcycle.baybis;
+
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class BayBisFlightRecorderEventsTest {
+
+    private static final String REQUEST_EVENT = "de.formcycle.baybis.Request";
+    private static final String PARSE_EVENT = "de.formcycle.baybis.Parse";
+    private static final String QUEUE_WAIT_EVENT = "de.formcycle.baybis.QueueWait";
+
+    private static final String RESPONSE_1333 = XMeldResponseParserTest.response1333(
+        XMeldResponseParserTest.person("Fischer", "Barbara", "1992-02-02", "Hansastraße", "12", "80686", "München"),
+        XMeldResponseParserTest.person("Fischer", "Hans", "1960-05-01", "Hansastraße", "14", "80686", "München"));
+
+    @Test
+    public void testRequestAndParseEventsAreEmitted() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/XoevService", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = wrapInSoap(RESPONSE_1333).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/XoevService";
+        byte[] payload = "<xmeld:anfrage>Fischer</xmeld:anfrage>".getBytes(StandardCharsets.UTF_8);
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording(loadProfile())) {
+            recording.start();
+            new XMeldResponseParser(false).parse(new BayBisSoapClient(endpoint).sendRequest(payload));
+            new XMeldResponseParser(false).parse(RESPONSE_1333);
+            recording.stop();
+            events = dump(recording);
+        } finally {
+            server.stop(0);
+        }
+
+        RecordedEvent request = single(events, REQUEST_EVENT);
+        Assert.assertEquals(endpoint, request.getString("endpoint"));
+        Assert.assertEquals(1, request.getInt("attempts"));
+        Assert.assertEquals(200, request.getInt("httpStatus"));
+        Assert.assertEquals(payload.length, request.getLong("payloadBytes"));
+        Assert.assertEquals(RESPONSE_1333.getBytes(StandardCharsets.UTF_8).length, request.getLong("responseBytes"));
+        Assert.assertNull(request.getString("errorCode"));
+
+        List<RecordedEvent> parses = events.stream()
+                .filter(event -> event.getEventType().getName().equals(PARSE_EVENT))
+                .collect(Collectors.toList());
+        Assert.assertEquals(2, parses.size());
+        assertNoPersonData(request);
+        for (RecordedEvent parse : parses) {
+            Assert.assertEquals("SUCCESS", parse.getString("status"));
+            Assert.assertEquals(2, parse.getInt("hitCount"));
+            Assert.assertFalse(parse.getBoolean("parallel"));
+            // Bytes for ByteBuffer and String input alike ("ß" and "ü" take two)
+            Assert.assertEquals(RESPONSE_1333.getBytes(StandardCharsets.UTF_8).length, parse.getLong("responseBytes"));
+            assertNoPersonData(parse);
+        }
+    }
+
+    @Test
+    public void testFailuresCarryErrorCode() throws Exception {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording(loadProfile())) {
+            recording.start();
+            try {
+                // Nothing listens on port 1
+                new BayBisSoapClient("http://127.0.0.1:1/XoevService").sendRequest("<x/>");
+                Assert.fail("Should throw exception for unreachable endpoint");
+            } catch (BayBisConnectorException expected) {
+                // recorded below
+            }
+            try {
+                new XMeldResponseParser(false).parse("<kein xml");
+                Assert.fail("Should throw exception for invalid XML");
+            } catch (BayBisConnectorException expected) {
+                // recorded below
+            }
+            recording.stop();
+            events = dump(recording);
+        }
+
+        Assert.assertEquals("CONNECTION_ERR", single(events, REQUEST_EVENT).getString("errorCode"));
+        Assert.assertEquals("PARSE_ERR", single(events, PARSE_EVENT).getString("errorCode"));
+    }
+
+    @Test
+    public void testQueueWaitIsRecordedPerAuthority() throws Exception {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording(loadProfile());
+             BayBisRequestScheduler scheduler = new BayBisRequestScheduler(1, 1)) {
+            scheduler.registerTenant("dbs:060030010000", 1, 3);
+            recording.start();
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Void> first = scheduler.submit("ags:09162000", BayBisRequestScheduler.Priority.BULK, () -> {
+                release.await();
+                return null;
+            });
+            CompletableFuture<String> waiting = scheduler.submit("dbs:060030010000",
+                    BayBisRequestScheduler.Priority.INTERACTIVE, () -> "ok");
+            Thread.sleep(50);
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            Assert.assertEquals("ok", waiting.get(5, TimeUnit.SECONDS));
+            recording.stop();
+            events = dump(recording);
+        }
+
+        List<RecordedEvent> waits = events.stream()
+                .filter(event -> event.getEventType().getName().equals(QUEUE_WAIT_EVENT))
+                .collect(Collectors.toList());
+        Assert.assertEquals(2, waits.size());
+        RecordedEvent waited = waits.stream()
+                .filter(event -> event.getString("authority").equals("dbs:060030010000"))
+                .findFirst().orElseThrow();
+        Assert.assertEquals("INTERACTIVE", waited.getString("priority"));
+        Assert.assertEquals(3, waited.getInt("weight"));
+        Assert.assertTrue("Waited for the first request", waited.getDuration().toMillis() >= 40);
+    }
+
+    private static Configuration loadProfile() throws IOException, ParseException {
+        try (InputStream in = BayBisFlightRecorderEventsTest.class.getResourceAsStream("/baybis.jfc")) {
+            Assert.assertNotNull("baybis.jfc must be on the classpath", in);
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                return Configuration.create(reader);
+            }
+        }
+    }
+
+    private static List<RecordedEvent> dump(Recording recording) throws IOException {
+        Path file = Files.createTempFile("baybis", ".jfr");
+        try {
+            recording.dump(file);
+            return new ArrayList<>(RecordingFile.readAllEvents(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+        Assert.assertEquals("Expected exactly one " + name + " event", 1, matching.size());
+        return matching.get(0);
+    }
+
+    private static void assertNoPersonData(RecordedEvent event) {
+        String text = event.toString();
+        Assert.assertFalse(text, text.contains("Fischer"));
+        Assert.assertFalse(text, text.contains("Hansastraße"));
+        Assert.assertFalse(text, text.contains("1992-02-02"));
+    }
+
+    private static String wrapInSoap(String xml) {
+        return "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>" +
+               "<callApplicationByteResponse><callApplicationByteReturn>" +
+               Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8)) +
+               "</callApplicationByteReturn></callApplicationByteResponse>" +
+               "</soapenv:Body></soapenv:Envelope>";
+    }
+}
@@ -0,0 +1,140 @@
+package de.formcycle.baybis;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BayBisKeepWarmProberTest {
+
+    private HttpServer server;
+    private final AtomicInteger wsdlRequests = new AtomicInteger();
+    private volatile int wsdlStatus = 200;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/XoevService", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body;
+            int status;
+            if ("GET".equals(exchange.getRequestMethod()) && isWsdlQuery(exchange.getRequestURI().getQuery())) {
+                wsdlRequests.incrementAndGet();
+                body = "<wsdl:definitions/>".getBytes(StandardCharsets.UTF_8);
+                status = wsdlStatus;
+            } else {
+                body = ("<callApplicationByteReturn>" + Base64.getEncoder().encodeToString("<x/>".getBytes(StandardCharsets.UTF_8))
+                        + "</callApplicationByteReturn>").getBytes(StandardCharsets.UTF_8);
+                status = 200;
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testProbeRecordsLatencyAndSkipsBusyEndpoints() {
+        BayBisSoapClient client = new BayBisSoapClient(endpoint());
+        BayBisKeepWarmProber prober = new BayBisKeepWarmProber(client, Duration.ofMinutes(1));
+        BayBisEndpointGroup.Endpoint endpoint = client.getEndpointGroup().getEndpoints().get(0);
+
+        Assert.assertEquals(1, prober.probeIdleEndpoints());
+        Assert.assertEquals(1, wsdlRequests.get());
+        Assert.assertTrue(endpoint.getLatencyMillis() > 0);
+        List<BayBisKeepWarmProber.ProbeResult> results = prober.getLastResults();
+        Assert.assertEquals(1, results.size());
+        Assert.assertTrue(results.get(0).isSuccess());
+        Assert.assertEquals(200, results.get(0).getHttpStatus());
+
+        // A regular request keeps the connection warm, so no probe is needed
+        client.sendRequest("<x/>");
+        Assert.assertEquals(0, prober.probeIdleEndpoints());
+        Assert.assertEquals(1, wsdlRequests.get());
+    }
+
+    @Test
+    public void testFailedProbeTakesEndpointOut() {
+        wsdlStatus = 503;
+        BayBisEndpointGroup group = new BayBisEndpointGroup(List.of(endpoint()), 1, Duration.ofMinutes(1));
+        BayBisKeepWarmProber prober = new BayBisKeepWarmProber(new BayBisSoapClient(group), Duration.ofMinutes(1));
+
+        prober.probeIdleEndpoints();
+
+        Assert.assertFalse(group.getEndpoints().get(0).isHealthy());
+        BayBisKeepWarmProber.ProbeResult result = prober.getLastResults().get(0);
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals("HTTP_ERR_503", result.getErrorCode().orElseThrow());
+
+        wsdlStatus = 200;
+        prober.probeIdleEndpoints();
+        Assert.assertTrue(group.getEndpoints().get(0).isHealthy());
+    }
+
+    @Test
+    public void testEndpointWithQueryAndNotFoundWsdl() {
+        wsdlStatus = 404;
+        BayBisEndpointGroup group = new BayBisEndpointGroup(List.of(endpoint() + "?mandant=0900"), 1, Duration.ofMinutes(1));
+        BayBisKeepWarmProber prober = new BayBisKeepWarmProber(new BayBisSoapClient(group), Duration.ofMinutes(1));
+
+        prober.probeIdleEndpoints();
+
+        Assert.assertEquals(1, wsdlRequests.get());
+        Assert.assertEquals("HTTP_ERR_404", prober.getLastResults().get(0).getErrorCode().orElseThrow());
+        Assert.assertFalse(group.getEndpoints().get(0).isHealthy());
+        Assert.assertEquals("http://host/XoevService?mandant=0900&wsdl",
+                BayBisSoapClient.wsdlUri(URI.create("http://host/XoevService?mandant=0900#x")).toString());
+    }
+
+    @Test
+    public void testActiveHours() {
+        BayBisSoapClient client = new BayBisSoapClient(endpoint());
+        LocalTime from = LocalTime.of(6, 0);
+        LocalTime until = LocalTime.of(20, 0);
+
+        Assert.assertTrue(prober(client, from, until, "07:30").isActive());
+        Assert.assertFalse(prober(client, from, until, "05:59").isActive());
+        Assert.assertFalse(prober(client, from, until, "20:00").isActive());
+        // Spanning midnight
+        Assert.assertTrue(prober(client, until, from, "23:00").isActive());
+        Assert.assertTrue(prober(client, until, from, "02:00").isActive());
+        Assert.assertFalse(prober(client, until, from, "12:00").isActive());
+        // Equal bounds: always active
+        Assert.assertTrue(prober(client, from, from, "03:00").isActive());
+    }
+
+    private static BayBisKeepWarmProber prober(BayBisSoapClient client, LocalTime from, LocalTime until, String now) {
+        Clock clock = Clock.fixed(Instant.parse("2026-03-02T" + now + ":00Z"), ZoneOffset.UTC);
+        return new BayBisKeepWarmProber(client, Duration.ofMinutes(1), from, until, clock);
+    }
+
+    private static boolean isWsdlQuery(String query) {
+        return query != null && List.of(query.split("&")).contains("wsdl");
+    }
+
+    private String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/XoevService";
+    }
+}
@@ -0,0 +1,261 @@
+package de.formcycle.baybis;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BayBisRequestQueueTest {
+
+    private static final String UUID_A = "a91e4951-3f23-596f-9a02-505b94fca5dd";
+    private static final String UUID_B = "0b6a7c1e-1d2f-4a3b-8c9d-0e1f2a3b4c5d";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final BayBisRequestQueue.Listener listener = new BayBisRequestQueue.Listener() {
+        @Override
+        public void onResult(String uuid, ByteBuffer response) {
+            results.put(uuid, StandardCharsets.UTF_8.decode(response).toString());
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(String uuid, BayBisConnectorException error) {
+            failures.put(uuid, error.getErrorCode());
+            done.countDown();
+        }
+    };
+
+    @Test
+    public void testUuidIsExtractedFromHeader() {
+        Assert.assertEquals(UUID_A, BayBisRequestQueue.nachrichtenUUID(request(UUID_A)));
+        byte[] prefixed = ("<x:kopf><x:nachrichtenUUID>" + UUID_B.toUpperCase() + "</x:nachrichtenUUID></x:kopf>")
+                .getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(UUID_B, BayBisRequestQueue.nachrichtenUUID(prefixed));
+        try {
+            BayBisRequestQueue.nachrichtenUUID("<nachrichtenUUID>../../etc</nachrichtenUUID>".getBytes(StandardCharsets.UTF_8));
+            Assert.fail("Should reject invalid UUID");
+        } catch (BayBisConnectorException e) {
+            Assert.assertEquals("INPUT_ERR", e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testRequestIsSentAndDuplicatesAreIgnored() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(folder.getRoot().toPath(),
+                xml -> { sent.incrementAndGet(); return response("ok"); }, listener, 2)) {
+            Assert.assertEquals(UUID_A, queue.enqueue(request(UUID_A)));
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            awaitIdle(queue);
+
+            queue.enqueue(request(UUID_A));
+            Thread.sleep(100);
+            Assert.assertEquals(1, sent.get());
+            Assert.assertEquals("ok", results.get(UUID_A));
+        }
+    }
+
+    @Test
+    public void testTransientErrorsAreRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        BayBisRequestQueue.Sender flaky = xml -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new BayBisConnectorException("HTTP Error 503", "HTTP_ERR_503");
+            }
+            return response("ok");
+        };
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(folder.getRoot().toPath(), flaky, listener, 1,
+                5, Duration.ofMillis(10))) {
+            queue.enqueue(request(UUID_A));
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertEquals("ok", results.get(UUID_A));
+    }
+
+    @Test
+    public void testPermanentErrorsAreReportedOnce() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(folder.getRoot().toPath(), xml -> {
+            attempts.incrementAndGet();
+            throw new BayBisConnectorException("SOAP Fault received from BayBIS", "SOAP_FAULT");
+        }, listener, 1, 5, Duration.ofMillis(10))) {
+            queue.enqueue(request(UUID_A));
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            awaitIdle(queue);
+        }
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertEquals("SOAP_FAULT", failures.get(UUID_A));
+    }
+
+    @Test
+    public void testInternalErrorsAreNotRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(folder.getRoot().toPath(), xml -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("Illegal base64 character 2d");
+        }, listener, 1, 5, Duration.ofMillis(10))) {
+            queue.enqueue(request(UUID_A));
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            awaitIdle(queue);
+        }
+        Assert.assertEquals(1, attempts.get());
+        Assert.assertEquals("INTERNAL_ERR", failures.get(UUID_A));
+    }
+
+    @Test
+    public void testPendingRequestsSurviveRestart() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        BayBisRequestQueue.Sender down = xml -> {
+            throw new BayBisConnectorException("HTTP Error 503", "HTTP_ERR_503");
+        };
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, down, listener, 1, 100, Duration.ofHours(1))) {
+            queue.enqueue(request(UUID_A));
+            queue.enqueue(request(UUID_B));
+            Assert.assertEquals(2, queue.getPendingCount());
+        }
+
+        AtomicInteger sent = new AtomicInteger();
+        CountDownLatch both = new CountDownLatch(2);
+        BayBisRequestQueue.Listener counting = new BayBisRequestQueue.Listener() {
+            @Override
+            public void onResult(String uuid, ByteBuffer response) {
+                both.countDown();
+            }
+
+            @Override
+            public void onFailure(String uuid, BayBisConnectorException error) {
+                Assert.fail(error.getMessage());
+            }
+        };
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, xml -> { sent.incrementAndGet(); return response("ok"); },
+                counting, 2)) {
+            Assert.assertTrue(both.await(5, TimeUnit.SECONDS));
+            awaitIdle(queue);
+        }
+        Assert.assertEquals(2, sent.get());
+
+        // Completed requests are neither resent nor accepted again
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, xml -> { sent.incrementAndGet(); return response("ok"); },
+                counting, 1)) {
+            queue.enqueue(request(UUID_A));
+            Thread.sleep(100);
+            Assert.assertEquals(0, queue.getPendingCount());
+        }
+        Assert.assertEquals(2, sent.get());
+    }
+
+    @Test
+    public void testFailingListenerGetsTheResultAgain() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        AtomicInteger sent = new AtomicInteger();
+        BayBisRequestQueue.Sender ok = xml -> { sent.incrementAndGet(); return response("ok"); };
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch delivered = new CountDownLatch(1);
+        BayBisRequestQueue.Listener diskFull = new BayBisRequestQueue.Listener() {
+            @Override
+            public void onResult(String uuid, ByteBuffer response) {
+                if (calls.incrementAndGet() < 3) {
+                    throw new BayBisConnectorException("Could not write result: No space left on device", "QUEUE_ERR");
+                }
+                results.put(uuid, StandardCharsets.UTF_8.decode(response).toString());
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(String uuid, BayBisConnectorException error) {
+                Assert.fail(error.getMessage());
+            }
+        };
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, ok, diskFull, 1, 5, Duration.ofMillis(10))) {
+            queue.enqueue(request(UUID_A));
+            Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            awaitIdle(queue);
+        }
+        // Delivered again without asking BayBIS again
+        Assert.assertEquals(1, sent.get());
+        Assert.assertEquals(3, calls.get());
+        Assert.assertEquals("ok", results.get(UUID_A));
+
+        // A result the listener never took stays queued and is resent after a restart
+        BayBisRequestQueue.Listener broken = new BayBisRequestQueue.Listener() {
+            @Override
+            public void onResult(String uuid, ByteBuffer response) {
+                throw new BayBisConnectorException("Could not write result: Permission denied", "QUEUE_ERR");
+            }
+
+            @Override
+            public void onFailure(String uuid, BayBisConnectorException error) {
+                Assert.fail(error.getMessage());
+            }
+        };
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, ok, broken, 1, 5, Duration.ofHours(1))) {
+            queue.enqueue(request(UUID_B));
+            for (int i = 0; i < 100 && sent.get() < 2; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(queue.isPending(UUID_B));
+        }
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, ok, listener, 1)) {
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            awaitIdle(queue);
+        }
+        Assert.assertEquals(3, sent.get());
+        Assert.assertEquals("ok", results.get(UUID_B));
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        BayBisRequestQueue.Sender down = xml -> {
+            throw new BayBisConnectorException("HTTP Error 503", "HTTP_ERR_503");
+        };
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, down, listener, 1, 100, Duration.ofHours(1))) {
+            queue.enqueue(request(UUID_A));
+        }
+        // Simulate a crash in the middle of appending a record
+        try (FileChannel log = FileChannel.open(dir.resolve(BayBisRequestQueue.LOG_FILE), StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[] {1, 0, 36, 'a', 'b'}));
+        }
+        try (BayBisRequestQueue queue = new BayBisRequestQueue(dir, down, listener, 1, 100, Duration.ofHours(1))) {
+            Assert.assertEquals(1, queue.getPendingCount());
+            Assert.assertTrue(queue.isPending(UUID_A));
+        }
+    }
+
+    private static void awaitIdle(BayBisRequestQueue queue) throws InterruptedException {
+        for (int i = 0; i < 100 && queue.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, queue.getPendingCount());
+    }
+
+    private static byte[] request(String uuid) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><xmeld:datenabruf.freieSuche.1332 xmlns:xmeld=\"http://www.osci.de/xmeld2511a\">" +
+                "<nachrichtenkopf.g2g><identifikation.nachricht><nachrichtenUUID>" + uuid + "</nachrichtenUUID>" +
+                "</identifikation.nachricht></nachrichtenkopf.g2g></xmeld:datenabruf.freieSuche.1332>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer response(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,130 @@
+package de.formcycle.baybis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BayBisRequestSchedulerTest {
+
+    private BayBisRequestScheduler scheduler;
+
+    @After
+    public void closeScheduler() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testTenantBulkheadLeavesRoomForOthers() throws Exception {
+        scheduler = new BayBisRequestScheduler(4, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runningForA = new AtomicInteger();
+        AtomicInteger maxRunningForA = new AtomicInteger();
+
+        List<CompletableFuture<String>> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(scheduler.submit("ags:A", BayBisRequestScheduler.Priority.BULK, () -> {
+                maxRunningForA.accumulateAndGet(runningForA.incrementAndGet(), Math::max);
+                release.await();
+                runningForA.decrementAndGet();
+                return "A";
+            }));
+        }
+
+        // Authority B is not blocked by A's batch
+        String b = scheduler.submit("ags:B", BayBisRequestScheduler.Priority.INTERACTIVE, () -> "B")
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("B", b);
+
+        release.countDown();
+        for (CompletableFuture<String> f : batch) {
+            Assert.assertEquals("A", f.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, maxRunningForA.get());
+    }
+
+    @Test
+    public void testInteractiveJumpsAheadOfBulkAndTenantsAlternate() throws Exception {
+        scheduler = new BayBisRequestScheduler(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<Void> blocker = scheduler.submit("ags:X", BayBisRequestScheduler.Priority.BULK, () -> {
+            release.await();
+            return null;
+        });
+        List<CompletableFuture<Boolean>> all = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String a = "A-bulk-" + i;
+            String b = "B-bulk-" + i;
+            all.add(scheduler.submit("ags:A", BayBisRequestScheduler.Priority.BULK, () -> order.add(a)));
+            all.add(scheduler.submit("ags:B", BayBisRequestScheduler.Priority.BULK, () -> order.add(b)));
+        }
+        all.add(scheduler.submit("ags:B", BayBisRequestScheduler.Priority.INTERACTIVE, () -> order.add("B-interactive")));
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Boolean> f : all) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals("B-interactive", order.get(0));
+        // Fair share: B's bulk requests are interleaved with A's batch rather than queued behind it
+        Assert.assertTrue(order.toString(), order.indexOf("B-bulk-0") < order.indexOf("A-bulk-2"));
+    }
+
+    @Test
+    public void testQueueWaitAndRejectionAreReportedPerTenant() throws Exception {
+        scheduler = new BayBisRequestScheduler(1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = scheduler.submit("ags:A", BayBisRequestScheduler.Priority.BULK, () -> {
+            release.await();
+            return null;
+        });
+        CompletableFuture<String> queued = scheduler.submit("ags:A", BayBisRequestScheduler.Priority.BULK, () -> "ok");
+        try {
+            scheduler.submit("ags:A", BayBisRequestScheduler.Priority.BULK, () -> "too much");
+            Assert.fail("Should throw exception for full queue");
+        } catch (BayBisConnectorException e) {
+            Assert.assertEquals("QUEUE_FULL", e.getErrorCode());
+        }
+
+        Thread.sleep(50);
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("ok", queued.get(5, TimeUnit.SECONDS));
+
+        BayBisRequestScheduler.TenantStats stats = scheduler.getStats().get(0);
+        Assert.assertEquals("ags:A", stats.getAuthority());
+        Assert.assertEquals(2, stats.getDispatched());
+        Assert.assertEquals(1, stats.getRejected());
+        Assert.assertTrue("Queued request waited for the first one", stats.getMaxWaitMillis() >= 40);
+
+        scheduler.registerTenant("ags:A", 2, 5);
+        stats = scheduler.getStats().get(0);
+        Assert.assertEquals(2, stats.getMaxConcurrent());
+        Assert.assertEquals(5, stats.getWeight());
+    }
+
+    @Test
+    public void testTaskExceptionIsPropagated() {
+        scheduler = new BayBisRequestScheduler(1, 1);
+        try {
+            scheduler.execute("ags:A", BayBisRequestScheduler.Priority.INTERACTIVE, () -> {
+                throw new BayBisConnectorException("HTTP Error 503", "HTTP_ERR_503");
+            });
+            Assert.fail("Should rethrow the task's exception");
+        } catch (BayBisConnectorException e) {
+            Assert.assertEquals("HTTP_ERR_503", e.getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package de.formcycle.baybis;
+
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+public class BayBisSoapClientTest {
+
+    private static final String RESPONSE_1333 =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<xmeld:datenabruf.freieSuche.antwort.1333 xmlns:xmeld=\"http://www.osci.de/xmeld2511a\">" +
+        "  <xmeld:antwortSuchanfrage><xmeld:auskunft>" +
+        "    <xmeld:person>" +
+        "      <xmeld:nachname><name>Müller</name></xmeld:nachname>" +
+        "      <xmeld:vornamen><name>Jürgen</name></xmeld:vornamen>" +
+        "      <xmeld:wohnung><xmeld:anschrift><strasse>Hansastraße</strasse><ort>München</ort></xmeld:anschrift></xmeld:wohnung>" +
+        "    </xmeld:person>" +
+        "  </xmeld:auskunft></xmeld:antwortSuchanfrage>" +
+        "</xmeld:datenabruf.freieSuche.antwort.1333>";
+
+    private HttpServer server;
+    private volatile byte[] lastRequest;
+    private volatile int status = 200;
+    private volatile String soapResponse;
+
+    @Before
+    public void startServer() throws IOException {
+        soapResponse = wrapInSoap(RESPONSE_1333);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/XoevService", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                lastRequest = in.readAllBytes();
+            }
+            byte[] body = soapResponse.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testStringAndByteOverloadsReturnSameContent() throws IOException {
+        BayBisSoapClient client = new BayBisSoapClient(endpoint());
+        byte[] payload = "<xmeld:test>Größe</xmeld:test>".getBytes(StandardCharsets.UTF_8);
+
+        String asString = client.sendRequest(new String(payload, StandardCharsets.UTF_8));
+        Assert.assertEquals(RESPONSE_1333, asString);
+        Assert.assertArrayEquals(payload, sentPayload());
+
+        ByteBuffer asBuffer = client.sendRequest(payload);
+        Assert.assertEquals(RESPONSE_1333, StandardCharsets.UTF_8.decode(asBuffer).toString());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(payload.length);
+        direct.put(payload).flip();
+        client.sendRequest(direct);
+        Assert.assertEquals("Caller's buffer position must not change", 0, direct.position());
+        Assert.assertArrayEquals(payload, sentPayload());
+
+        try (InputStream in = client.sendRequestAsStream(new ByteArrayInputStream(payload))) {
+            Assert.assertArrayEquals(RESPONSE_1333.getBytes(StandardCharsets.UTF_8), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testByteResponseFeedsParserDirectly() {
+        BayBisSoapClient client = new BayBisSoapClient(endpoint());
+        ByteBuffer response = client.sendRequest("<x/>".getBytes(StandardCharsets.UTF_8));
+
+        JSONObject result = new XMeldResponseParser(false).parseResponse(response);
+
+        Assert.assertEquals("SUCCESS", result.getString("status"));
+        Assert.assertEquals(1, result.getInt("trefferAnzahl"));
+        JSONObject hit = result.getJSONArray("treffer").getJSONObject(0);
+        Assert.assertEquals("Müller", hit.getString("nachname"));
+        Assert.assertEquals("München", hit.getJSONObject("adresse").getString("ort"));
+        Assert.assertFalse(result.has("rawXml"));
+    }
+
+    @Test
+    public void testSoapFaultIsReported() {
+        soapResponse = "<soapenv:Envelope><soapenv:Body><soapenv:Fault>x</soapenv:Fault></soapenv:Body></soapenv:Envelope>";
+        try {
+            new BayBisSoapClient(endpoint()).sendRequest(new byte[] {'<', 'x', '/', '>'});
+            Assert.fail("Should throw exception for SOAP fault");
+        } catch (BayBisConnectorException e) {
+            Assert.assertEquals("SOAP_FAULT", e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testHttpErrorIsReported() {
+        status = 503;
+        try {
+            new BayBisSoapClient(endpoint()).sendRequest("<x/>");
+            Assert.fail("Should throw exception for HTTP error");
+        } catch (BayBisConnectorException e) {
+            Assert.assertEquals("HTTP_ERR_503", e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testFailoverToHealthyEndpoint() throws IOException {
+        HttpServer unavailable = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        unavailable.createContext("/XoevService", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        unavailable.start();
+        try {
+            String down = "http://127.0.0.1:" + unavailable.getAddress().getPort() + "/XoevService";
+            BayBisEndpointGroup group = new BayBisEndpointGroup(List.of(down, endpoint()), 1, Duration.ofMinutes(1));
+            BayBisSoapClient client = new BayBisSoapClient(group);
+
+            for (int i = 0; i < 5; i++) {
+                Assert.assertEquals(RESPONSE_1333, client.sendRequest("<x/>"));
+            }
+            Assert.assertFalse(group.getEndpoints().get(0).isHealthy());
+            Assert.assertTrue(group.getEndpoints().get(1).isHealthy());
+        } finally {
+            unavailable.stop(0);
+        }
+    }
+
+    @Test
+    public void testNoFailoverAfterGatewayTimeout() throws IOException {
+        HttpServer gatewayTimeout = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        gatewayTimeout.createContext("/XoevService", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(504, -1);
+            exchange.close();
+        });
+        gatewayTimeout.start();
+        try {
+            String url = "http://127.0.0.1:" + gatewayTimeout.getAddress().getPort() + "/XoevService";
+            BayBisEndpointGroup group = new BayBisEndpointGroup(List.of(url, endpoint()), 1, Duration.ofMinutes(1));
+            group.getEndpoints().get(1).recordFailure(); // only reached by failover
+            BayBisSoapClient client = new BayBisSoapClient(group);
+
+            try {
+                client.sendRequest("<x/>");
+                Assert.fail("Expected HTTP_ERR_504");
+            } catch (BayBisConnectorException e) {
+                Assert.assertEquals("HTTP_ERR_504", e.getErrorCode());
+            }
+            // BayBIS may have run the search behind the 504, so it must not be sent a second time
+            Assert.assertNull(lastRequest);
+        } finally {
+            gatewayTimeout.stop(0);
+        }
+    }
+
+    @Test
+    public void testHungEndpointTimesOut() throws IOException {
+        HttpServer hung = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        hung.createContext("/XoevService", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        hung.start();
+        try {
+            String url = "http://127.0.0.1:" + hung.getAddress().getPort() + "/XoevService";
+            BayBisEndpointGroup group = new BayBisEndpointGroup(List.of(url), 1, Duration.ofMinutes(1));
+            BayBisSoapClient client = new BayBisSoapClient(group, Duration.ofMillis(200));
+
+            long start = System.nanoTime();
+            try {
+                client.sendRequest("<x/>");
+                Assert.fail("Expected TIMEOUT_ERR");
+            } catch (BayBisConnectorException e) {
+                Assert.assertEquals("TIMEOUT_ERR", e.getErrorCode());
+            }
+            Assert.assertTrue(System.nanoTime() - start < Duration.ofMillis(1500).toNanos());
+            Assert.assertFalse(group.getEndpoints().get(0).isHealthy());
+        } finally {
+            hung.stop(0);
+        }
+    }
+
+    private String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/XoevService";
+    }
+
+    private byte[] sentPayload() {
+        String envelope = new String(lastRequest, StandardCharsets.UTF_8);
+        int start = envelope.indexOf("<tns:xmlParameter>") + "<tns:xmlParameter>".length();
+        int end = envelope.indexOf("</tns:xmlParameter>");
+        return Base64.getDecoder().decode(envelope.substring(start, end));
+    }
+
+    private static String wrapInSoap(String xml) {
+        return "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>" +
+               "<callApplicationByteResponse><callApplicationByteReturn>" +
+               Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8)) +
+               "</callApplicationByteReturn></callApplicationByteResponse>" +
+               "</soapenv:Body></soapenv:Envelope>";
+    }
+}
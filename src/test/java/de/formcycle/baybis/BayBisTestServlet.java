@@ -11,6 +11,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
 
 /**
  * Simple test servlet for the BayBIS connector web interface.
@@ -22,6 +26,11 @@ public class BayBisTestServlet extends HttpServlet {
     private static final String BAYBIS_ENDPOINT = "https://apk-int.akdb.de/okkommbis/services/XoevService";
     private static final String AGS_LESER = "ags:09000009";
     private static final String DBS_AUTOR = "dbs:060030010000";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    // Search results for follow-up requests (paging, details), so they do not query BayBIS again;
+    // per servlet instance, so a re-initialised servlet does not get the store closed by destroy()
+    private final XMeldResultSessionStore sessions =
+            new XMeldResultSessionStore(Duration.ofMinutes(5), 64L * 1024 * 1024);
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) 
@@ -45,6 +54,10 @@ public class BayBisTestServlet extends HttpServlet {
             }
 
             JSONObject requestData = new JSONObject(sb.toString());
+            if (requestData.has("sessionToken")) {
+                writeFollowUp(requestData, response);
+                return;
+            }
             
             // Extract search parameters
             String vorname = requestData.getString("vorname");
@@ -57,20 +70,20 @@ public class BayBisTestServlet extends HttpServlet {
             String plz = requestData.optString("plz", "");
             String ort = requestData.optString("ort", "");
             
-            boolean hasAddress = !strasse.isEmpty() || !hausnummer.isEmpty() || 
-                                !plz.isEmpty() || !ort.isEmpty();
-
             // Build XMeld 1332 XML
             String xml = buildXMeldRequest(vorname, nachname, geburtsdatum, 
-                                          hasAddress, strasse, hausnummer, plz, ort);
+                                          strasse, hausnummer, plz, ort);
 
             // Send to BayBIS
             BayBisSoapClient client = new BayBisSoapClient(BAYBIS_ENDPOINT);
             String responseXml = client.sendRequest(xml);
 
-            // Parse response
-            XMeldResponseParser parser = new XMeldResponseParser();
-            JSONObject result = parser.parseResponse(responseXml);
+            // Parse response and keep the hits for follow-up requests
+            XMeldResult parsed = new XMeldResponseParser().parse(responseXml);
+            JSONObject result = parsed.toJSONObject();
+            if (parsed.getStatus() == XMeldResult.Status.SUCCESS) {
+                result.put("sessionToken", sessions.put(parsed));
+            }
 
             // Return JSON
             PrintWriter out = response.getWriter();
@@ -89,6 +102,51 @@ public class BayBisTestServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Answers {"sessionToken": ..., "offset": 0, "limit": 20} from the session store; a detail view
+     * asks for a single hit (limit 1).
+     */
+    private void writeFollowUp(JSONObject requestData, HttpServletResponse response) throws IOException {
+        String token = requestData.getString("sessionToken");
+        int offset = requestData.optInt("offset", 0);
+        int limit = requestData.optInt("limit", DEFAULT_PAGE_SIZE);
+        if (offset < 0 || limit < 0) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            PrintWriter out = response.getWriter();
+            out.print(new JSONObject()
+                    .put("status", "ERROR")
+                    .put("message", "offset and limit must not be negative")
+                    .toString(2));
+            out.flush();
+            return;
+        }
+        OptionalInt total = sessions.getHitCount(token);
+        Optional<List<XMeldHit>> hits = sessions.getHits(token, offset, limit);
+
+        JSONObject result;
+        if (total.isEmpty() || hits.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            result = new JSONObject().put("status", "EXPIRED");
+        } else {
+            result = XMeldResult.success(hits.get(), null, null).toJSONObject();
+            result.put("trefferAnzahl", total.getAsInt());
+            result.put("offset", offset);
+            result.put("sessionToken", token);
+        }
+        PrintWriter out = response.getWriter();
+        out.print(result.toString(2));
+        out.flush();
+    }
+
+    /**
+     * Wipes the stored results and stops the sweeper thread, which would otherwise outlive the web application.
+     */
+    @Override
+    public void destroy() {
+        sessions.close();
+        super.destroy();
+    }
+
     @Override
     protected void doOptions(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
@@ -99,7 +157,7 @@ public class BayBisTestServlet extends HttpServlet {
     }
 
     private String buildXMeldRequest(String vorname, String nachname, String geburtsdatum,
-                                     boolean hasAddress, String strasse, String hausnummer, 
+                                     String strasse, String hausnummer, 
                                      String plz, String ort) {
         
         String uuid = java.util.UUID.randomUUID().toString();
@@ -108,10 +166,10 @@ public class BayBisTestServlet extends HttpServlet {
 
         StringBuilder xml = new StringBuilder();
         xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        xml.append("<xmeld:datenabruf.freieSuche.suchanfrage.1332\n");
-        xml.append("    xmlns:xmeld=\"http://www.osci.de/xmeld2511a\"\n");
+        xml.append("<xmeld:").append(XMeldSchema.MESSAGE_1332).append("\n");
+        xml.append("    xmlns:xmeld=\"").append(XMeldSchema.NAMESPACE).append("\"\n");
         xml.append("    xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
-        xml.append("    version=\"25.11a\"\n");
+        xml.append("    version=\"").append(XMeldSchema.VERSION).append("\"\n");
         xml.append("    standard=\"XMeld\">\n");
         
         // Header
@@ -152,56 +210,10 @@ public class BayBisTestServlet extends HttpServlet {
         xml.append("        <xmeld:kennung>web/test</xmeld:kennung>\n");
         xml.append("    </xmeld:datenAbrufendeStelle>\n");
         
-        // Search profile
-        xml.append("    <xmeld:suchprofil>\n");
-        xml.append("        <xmeld:auswahldaten>\n");
-        xml.append("            <xmeld:name>\n");
-        xml.append("                <xmeld:name>\n");
-        xml.append("                    <xmeld:nachnameUndVornamen>\n");
-        xml.append("                        <xmeld:vornamen><name>").append(escapeXml(vorname)).append("</name></xmeld:vornamen>\n");
-        xml.append("                        <xmeld:nachname><name>").append(escapeXml(nachname)).append("</name></xmeld:nachname>\n");
-        xml.append("                    </xmeld:nachnameUndVornamen>\n");
-        xml.append("                </xmeld:name>\n");
-        xml.append("            </xmeld:name>\n");
-        
-        // Optional address
-        if (hasAddress) {
-            xml.append("            <xmeld:wohnung>\n");
-            xml.append("                <xmeld:anschrift>\n");
-            xml.append("                    <xmeld:anschrift.inland>\n");
-            if (!plz.isEmpty()) {
-                xml.append("                        <postleitzahl>").append(escapeXml(plz)).append("</postleitzahl>\n");
-            }
-            if (!strasse.isEmpty()) {
-                xml.append("                        <strasse>").append(escapeXml(strasse)).append("</strasse>\n");
-            }
-            if (!ort.isEmpty()) {
-                xml.append("                        <wohnort>").append(escapeXml(ort)).append("</wohnort>\n");
-            }
-            if (!hausnummer.isEmpty()) {
-                xml.append("                        <hausnummerOderHausnummernbereich>\n");
-                xml.append("                            <hausnummer>").append(escapeXml(hausnummer)).append("</hausnummer>\n");
-                xml.append("                        </hausnummerOderHausnummernbereich>\n");
-            }
-            xml.append("                    </xmeld:anschrift.inland>\n");
-            xml.append("                </xmeld:anschrift>\n");
-            xml.append("            </xmeld:wohnung>\n");
-        }
-        
-        // Birth date
-        xml.append("            <xmeld:geburtsdaten>\n");
-        xml.append("                <xmeld:geburtstag>\n");
-        xml.append("                    <xmeld:geburtsdatum>\n");
-        xml.append("                        <xmeld:geburtsdatum>\n");
-        xml.append("                            <teilbekanntesDatum>\n");
-        xml.append("                                <jahrMonatTag>").append(geburtsdatum).append("</jahrMonatTag>\n");
-        xml.append("                            </teilbekanntesDatum>\n");
-        xml.append("                        </xmeld:geburtsdatum>\n");
-        xml.append("                    </xmeld:geburtsdatum>\n");
-        xml.append("                </xmeld:geburtstag>\n");
-        xml.append("            </xmeld:geburtsdaten>\n");
-        xml.append("        </xmeld:auswahldaten>\n");
-        xml.append("    </xmeld:suchprofil>\n");
+        // Search profile (element order and namespaces generated from the XMeld schemas)
+        xml.append("    ");
+        XMeldSuchprofilWriter.write(xml, nachname, vorname, plz, strasse, hausnummer, ort, geburtsdatum);
+        xml.append("\n");
         
         // Control information
         xml.append("    <xmeld:steuerungsinformationen>\n");
@@ -215,17 +227,8 @@ public class BayBisTestServlet extends HttpServlet {
         xml.append("        <xmeld:anforderungselement><code>37</code></xmeld:anforderungselement>\n");
         xml.append("        <xmeld:verzichtAufMitteilung>true</xmeld:verzichtAufMitteilung>\n");
         xml.append("    </xmeld:steuerungsinformationen>\n");
-        xml.append("</xmeld:datenabruf.freieSuche.suchanfrage.1332>");
+        xml.append("</xmeld:").append(XMeldSchema.MESSAGE_1332).append(">");
         
         return xml.toString();
     }
-
-    private String escapeXml(String text) {
-        if (text == null) return "";
-        return text.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&apos;");
-    }
 }
@@ -0,0 +1,196 @@
+package de.formcycle.baybis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BayBisWatchlistSchedulerTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final Map<String, XMeldResult> results = new HashMap<>();
+    private final List<String> checked = new ArrayList<>();
+    private final List<BayBisWatchlistScheduler.Change> changes = new ArrayList<>();
+
+    @Test
+    public void testOnlyChangedResultsAreReported() {
+        BayBisWatchlistScheduler scheduler = scheduler(LocalTime.MIDNIGHT, LocalTime.MIDNIGHT);
+        XMeldHit mueller = hit("2001", "Hansastraße", false, doc("L01X00T47", "2031-01-01"));
+        XMeldHit fischer = hit("2002", "Leopoldstraße", false);
+        results.put("a", result(mueller));
+        scheduler.watch("a");
+        scheduler.watch("b", result(fischer));
+
+        Assert.assertEquals(1, scheduler.runDueChecks()); // "b" has its baseline already
+        Assert.assertEquals(List.of("a"), checked);
+        Assert.assertTrue(changes.isEmpty());
+
+        // "a" has moved, a second person is found for "b"
+        clock.advance(Duration.ofDays(1));
+        results.put("a", result(hit("2001", "Hansastraße", true, doc("L01X00T47", "2031-01-01"))));
+        XMeldHit fischerTwin = hit("2003", "Leopoldstraße", false);
+        results.put("b", result(fischer, fischerTwin));
+        Assert.assertEquals(2, runTicks(scheduler));
+        Assert.assertEquals(2, changes.size());
+        BayBisWatchlistScheduler.Change moved = change("a");
+        Assert.assertEquals(1, moved.getModifiedHits().size());
+        Assert.assertTrue(moved.getModifiedHits().get(0).isVerzogen());
+        Assert.assertTrue(moved.getAddedHits().isEmpty());
+        Assert.assertEquals(List.of(fischerTwin), change("b").getAddedHits());
+
+        // Unchanged data is no change, a person no longer found is
+        clock.advance(Duration.ofDays(1));
+        results.put("a", result(hit("2001", "Hansastraße", true, doc("L01X00T47", "2031-01-01"))));
+        results.put("b", result(fischerTwin));
+        changes.clear();
+        Assert.assertEquals(2, runTicks(scheduler));
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(1, change("b").getRemovedCount());
+        Assert.assertEquals(5, scheduler.getCheckCount());
+        Assert.assertEquals(3, scheduler.getChangeCount());
+
+        Assert.assertTrue(scheduler.unwatch("a"));
+        clock.advance(Duration.ofDays(1));
+        checked.clear();
+        Assert.assertEquals(1, runTicks(scheduler));
+        Assert.assertEquals(List.of("b"), checked);
+    }
+
+    @Test
+    public void testIdDocumentOrderDoesNotChangeFingerprint() {
+        XMeldIdDocument pa = doc("L01X00T47", "2031-01-01");
+        XMeldIdDocument rp = new XMeldIdDocument("RP", "C4J60RG11", "2029-05-31", "München", "2019-06-01");
+        long fingerprint = XMeldHitFingerprint.content(hit("2001", "Hansastraße", false, pa, rp));
+
+        Assert.assertEquals(fingerprint, XMeldHitFingerprint.content(hit("2001", "Hansastraße", false, rp, pa)));
+        Assert.assertNotEquals(fingerprint, XMeldHitFingerprint.content(
+                hit("2001", "Hansastraße", false, pa, doc("C4J60RG11", "2029-05-31"))));
+        Assert.assertNotEquals(fingerprint, XMeldHitFingerprint.content(hit("2001", "Hansastraße", true, pa, rp)));
+    }
+
+    @Test
+    public void testChecksAreSpreadOverTheWindow() {
+        BayBisWatchlistScheduler scheduler = scheduler(LocalTime.of(22, 0), LocalTime.of(2, 0));
+        for (int i = 0; i < 1000; i++) {
+            results.put("e" + i, result());
+            scheduler.watch("e" + i);
+        }
+
+        clock.set("2026-03-02T12:00:00Z");
+        Assert.assertFalse(scheduler.isActive());
+        clock.set("2026-03-02T23:30:00Z");
+        Assert.assertTrue(scheduler.isActive());
+        // 1000 entries over 240 one-minute ticks
+        Assert.assertEquals(5, scheduler.checkBudget());
+        Assert.assertEquals(5, scheduler.runDueChecks());
+        Assert.assertEquals(List.of("e0", "e1", "e2", "e3", "e4"), checked);
+    }
+
+    @Test
+    public void testFailedChecksAndListenersAreRetried() {
+        BayBisWatchlistScheduler scheduler = scheduler(LocalTime.MIDNIGHT, LocalTime.MIDNIGHT);
+        scheduler.watch("a", result(hit("2001", "Hansastraße", false)));
+        clock.advance(Duration.ofDays(1));
+
+        // "a" has no configured result, so the checker fails
+        Assert.assertEquals(1, scheduler.runDueChecks());
+        Assert.assertEquals(1, scheduler.getFailureCount());
+        clock.advance(BayBisWatchlistScheduler.RETRY_DELAY.minusMinutes(1));
+        Assert.assertEquals(0, scheduler.runDueChecks());
+
+        clock.advance(Duration.ofMinutes(1));
+        results.put("a", result(hit("2001", "Hansastraße", true)));
+        failListener = true;
+        Assert.assertEquals(1, scheduler.runDueChecks());
+        Assert.assertEquals(1, changes.size());
+
+        // Not delivered, so the next re-check reports it again
+        failListener = false;
+        clock.advance(Duration.ofDays(1));
+        Assert.assertEquals(1, scheduler.runDueChecks());
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(1, changes.get(1).getModifiedHits().size());
+    }
+
+    private boolean failListener;
+
+    /**
+     * Runs ticks until nothing is due; small watchlists get one check per tick.
+     */
+    private static int runTicks(BayBisWatchlistScheduler scheduler) {
+        int total = 0;
+        for (int checked = scheduler.runDueChecks(); checked > 0; checked = scheduler.runDueChecks()) {
+            total += checked;
+        }
+        return total;
+    }
+
+    private BayBisWatchlistScheduler.Change change(String entryId) {
+        return changes.stream().filter(change -> change.getEntryId().equals(entryId)).findFirst().orElseThrow();
+    }
+
+    private BayBisWatchlistScheduler scheduler(LocalTime windowFrom, LocalTime windowUntil) {
+        return new BayBisWatchlistScheduler(entryId -> {
+            checked.add(entryId);
+            XMeldResult result = results.get(entryId);
+            if (result == null) {
+                throw new BayBisConnectorException("No answer", "HTTP_ERR_503");
+            }
+            return result;
+        }, change -> {
+            changes.add(change);
+            if (failListener) {
+                throw new IllegalStateException("Workflow unavailable");
+            }
+        }, Duration.ofDays(1), windowFrom, windowUntil, clock);
+    }
+
+    private static XMeldResult result(XMeldHit... hits) {
+        return XMeldResult.success(List.of(hits), null, null);
+    }
+
+    private static XMeldHit hit(String id, String strasse, boolean verzogen, XMeldIdDocument... ausweise) {
+        return new XMeldHit(id, "Müller", "Jürgen", "", "1970-03-12", "m",
+                new XMeldAddress(strasse, "12", "80686", "München"), verzogen, false, List.of(ausweise));
+    }
+
+    private static XMeldIdDocument doc(String seriennummer, String gueltigkeitsdauer) {
+        return new XMeldIdDocument("PA", seriennummer, gueltigkeitsdauer, "Landeshauptstadt München", "2021-01-04");
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2026-03-02T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        void set(String instant) {
+            now = Instant.parse(instant);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
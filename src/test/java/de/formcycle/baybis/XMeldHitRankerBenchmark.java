@@ -0,0 +1,75 @@
+package de.formcycle.baybis;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Micro benchmark for {@link XMeldHitRanker} on broad searches (thousands of hits).
+ * Prints the median and 99th percentile per ranking run and the bytes allocated per hit.
+ *
+ * <p>Run with: {@code java -cp ... de.formcycle.baybis.XMeldHitRankerBenchmark [hits...]}</p>
+ */
+public class XMeldHitRankerBenchmark {
+
+    private static final String[] NACHNAMEN = {"Müller", "Meier", "Mayr", "Schmidt", "Schmitt", "Fischer", "Vischer",
+            "Weber", "Wagner", "Becker", "Hoffmann", "Schäfer", "Koch", "Bauer", "Richter", "Klein", "Wolf", "Schröder"};
+    private static final String[] VORNAMEN = {"Barbara", "Hans", "Hans-Peter", "Jürgen", "Anna Maria", "Sophie",
+            "Maximilian", "Lukas", "Barbara Carina", "Franz Xaver", "Elisabeth", "Josef"};
+    private static final String[] ORTE = {"München", "Nürnberg", "Augsburg", "Regensburg", "Würzburg"};
+
+    private static final int WARMUP_RUNS = 2_000;
+    private static final int MEASURED_RUNS = 1_000;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] {100, 1_000, 5_000};
+        XMeldSearchCriteria criteria = new XMeldSearchCriteria("Müller", "Hans", "1970-03-12", "80686", "München", "");
+
+        System.out.println("XMeldHitRanker benchmark (" + Runtime.getRuntime().availableProcessors() + " CPUs, "
+                + System.getProperty("java.version") + ")");
+        for (int size : sizes) {
+            XMeldResult result = syntheticResult(size);
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                XMeldHitRanker.rank(result, criteria);
+            }
+
+            long[] nanos = new long[MEASURED_RUNS];
+            long allocatedBefore = allocatedBytes();
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                long start = System.nanoTime();
+                XMeldHitRanker.rank(result, criteria);
+                nanos[i] = System.nanoTime() - start;
+            }
+            long allocated = allocatedBytes() - allocatedBefore;
+            Arrays.sort(nanos);
+
+            System.out.printf("%6d hits: median %8.1f µs, p99 %8.1f µs, %5.1f bytes/hit allocated%n",
+                    size, nanos[MEASURED_RUNS / 2] / 1000d, nanos[MEASURED_RUNS * 99 / 100] / 1000d,
+                    allocated < 0 ? Double.NaN : allocated / (double) MEASURED_RUNS / size);
+        }
+    }
+
+    private static XMeldResult syntheticResult(int size) {
+        List<XMeldHit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String ort = ORTE[i % ORTE.length];
+            XMeldAddress address = new XMeldAddress("Hauptstraße", String.valueOf(i % 200), "8" + (i % 10) + "686", ort);
+            hits.add(new XMeldHit(String.valueOf(100_000 + i), NACHNAMEN[i % NACHNAMEN.length],
+                    VORNAMEN[i % VORNAMEN.length], "", String.format("19%02d-%02d-%02d", 40 + i % 60, 1 + i % 12, 1 + i % 28),
+                    "m", address, false, false, List.of()));
+        }
+        return XMeldResult.success(hits, null, null);
+    }
+
+    // Allocated bytes of the current thread, -1 if the JVM does not support it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
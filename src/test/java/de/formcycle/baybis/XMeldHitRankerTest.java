@@ -0,0 +1,108 @@
+package de.formcycle.baybis;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class XMeldHitRankerTest {
+
+    @Test
+    public void testFoldingAndKoelnerPhonetik() {
+        Assert.assertEquals("mueller luedenscheidt", fold("Müller-Lüdenscheidt"));
+        Assert.assertEquals("mueller luedenscheidt", fold(" MUELLER  LUEDENSCHEIDT "));
+        Assert.assertEquals("strasse", fold("Straße"));
+        Assert.assertEquals("jose", fold("José"));
+
+        Assert.assertEquals("3412", phonetic("Wikipedia"));
+        Assert.assertEquals("17863", phonetic("Breschnew"));
+        Assert.assertEquals("65752682", phonetic("Müllerlüdenscheidt"));
+        Assert.assertEquals(phonetic("Müller"), phonetic("Mueller"));
+        Assert.assertEquals(phonetic("Meier"), phonetic("Mayr"));
+        Assert.assertEquals(phonetic("Schmidt"), phonetic("Schmitt"));
+    }
+
+    @Test
+    public void testDates() {
+        Assert.assertEquals(19920202, MatchKeys.packDate(" 1992-02-02\n"));
+        Assert.assertEquals(19920200, MatchKeys.packDate("1992-02"));
+        Assert.assertEquals(0, MatchKeys.packDate(""));
+
+        Assert.assertEquals(100, XMeldHitRanker.dateScore(19920202, 19920202));
+        Assert.assertEquals(100, XMeldHitRanker.dateScore(19920202, 19920000));
+        Assert.assertEquals(70, XMeldHitRanker.dateScore(19920000, 19920202));
+        Assert.assertEquals(70, XMeldHitRanker.dateScore(19920102, 19920201));
+        Assert.assertEquals(0, XMeldHitRanker.dateScore(19600501, 19920202));
+    }
+
+    @Test
+    public void testBestMatchComesFirst() {
+        String xml = XMeldResponseParserTest.response1333(
+            XMeldResponseParserTest.person("Vischer", "Barbara", "1992-02-02", "Hansastraße", "12", "80686", "München"),
+            XMeldResponseParserTest.person("Fischer", "Hans", "1960-05-01", "Hansastraße", "14", "80686", "München"),
+            XMeldResponseParserTest.person("FISCHER", "Barbara Carina", "1992-02-02", "Hansastraße", "12", "80686", "München"),
+            XMeldResponseParserTest.person("Fischer", "Barbara", "1992-02-02", "Hansastraße", "12", "80686", "München"));
+        XMeldResult parsed = new XMeldResponseParser(false).parse(xml);
+        XMeldSearchCriteria criteria = new XMeldSearchCriteria("Fischer", "Barbara", "1992-02-02", "80686", "", "");
+
+        XMeldResult ranked = XMeldHitRanker.rank(parsed, criteria);
+
+        Assert.assertTrue(ranked.isRanked());
+        Assert.assertFalse(parsed.isRanked());
+        Assert.assertEquals(100, ranked.getMatchScore(0));
+        Assert.assertEquals("Barbara", ranked.getTreffer().get(0).getVorname());
+        Assert.assertEquals("Barbara Carina", ranked.getTreffer().get(1).getVorname());
+        Assert.assertEquals("Vischer", ranked.getTreffer().get(2).getNachname()); // phonetic match
+        Assert.assertEquals("Hans", ranked.getTreffer().get(3).getVorname());
+
+        JSONArray treffer = new JSONObject(ranked.toJson()).getJSONArray("treffer");
+        Assert.assertEquals(1, treffer.getJSONObject(0).getInt("rang"));
+        Assert.assertEquals(100, treffer.getJSONObject(0).getInt("matchScore"));
+        Assert.assertEquals(4, treffer.getJSONObject(3).getInt("rang"));
+        Assert.assertFalse(new JSONObject(parsed.toJson()).getJSONArray("treffer").getJSONObject(0).has("rang"));
+    }
+
+    @Test
+    public void testCriteriaFromRequest() throws Exception {
+        byte[] request = Files.readAllBytes(Paths.get("spec/test/FachspezifischBehoerdenauskunft005a-1332.xml"));
+        XMeldSearchCriteria criteria = XMeldSearchCriteria.fromRequest(request);
+
+        Assert.assertEquals("Fischer", criteria.getNachname());
+        Assert.assertEquals("Barbara Carina", criteria.getVorname());
+        Assert.assertEquals("1992-02-02", criteria.getGeburtsdatum());
+        Assert.assertEquals("", criteria.getPlz()); // the authority's own address is not a criterion
+    }
+
+    @Test
+    public void testCriteriaFromGoldenMasterWithOrt() throws Exception {
+        byte[] request = Files.readAllBytes(Paths.get("spec/test/test-payload-1332.xml"));
+        XMeldSearchCriteria criteria = XMeldSearchCriteria.fromRequest(request);
+
+        Assert.assertEquals("Musterstadt", criteria.getOrt()); // <xian:ort>, no wohnort
+        Assert.assertEquals("12345", criteria.getPlz());
+        Assert.assertEquals("Musterstraße", criteria.getStrasse());
+        Assert.assertEquals("Max", criteria.getVorname());
+        Assert.assertTrue(criteria.hasAddress());
+    }
+
+    @Test
+    public void testEmptyCriteriaKeepOrder() {
+        XMeldResult parsed = new XMeldResponseParser(false).parse(XMeldResponseParserTest.response1333(
+            XMeldResponseParserTest.person("B", "B", "", "", "", "", "")));
+        Assert.assertSame(parsed, XMeldHitRanker.rank(parsed, new XMeldSearchCriteria(null, null, null, null, null, null)));
+    }
+
+    private static String fold(String value) {
+        char[] out = new char[value.length() * 2];
+        return new String(out, 0, MatchKeys.fold(value, out));
+    }
+
+    private static String phonetic(String value) {
+        char[] folded = fold(value).toCharArray();
+        char[] out = new char[folded.length * 2];
+        return new String(out, 0, MatchKeys.koelnerPhonetik(folded, 0, folded.length, out));
+    }
+}
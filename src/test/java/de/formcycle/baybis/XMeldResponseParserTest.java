@@ -0,0 +1,272 @@
+package de.formcycle.baybis;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+public class XMeldResponseParserTest {
+
+    static final String NS = "xmlns:xmeld=\"http://www.osci.de/xmeld2511a\"";
+
+    static String person(String nachname, String vorname, String geburtsdatum, String strasse,
+                         String hausnummer, String plz, String ort) {
+        return "<xmeld:person>" +
+               "<xmeld:identifikationsmerkmal>" + Math.abs((nachname + vorname).hashCode()) + "</xmeld:identifikationsmerkmal>" +
+               "<xmeld:nachname><name>" + nachname + "</name></xmeld:nachname>" +
+               "<xmeld:vornamen><name>" + vorname + "</name></xmeld:vornamen>" +
+               "<xmeld:geburtsdatum>" + geburtsdatum + "</xmeld:geburtsdatum>" +
+               "<xmeld:geschlecht><code>m</code></xmeld:geschlecht>" +
+               "<xmeld:wohnung><xmeld:anschrift>" +
+               "<strasse>" + strasse + "</strasse><hausnummer>" + hausnummer + "</hausnummer>" +
+               "<postleitzahl>" + plz + "</postleitzahl><ort>" + ort + "</ort>" +
+               "</xmeld:anschrift></xmeld:wohnung>" +
+               "</xmeld:person>";
+    }
+
+    static String response1333(String... persons) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        xml.append("<xmeld:datenabruf.freieSuche.antwort.1333 ").append(NS).append(" version=\"25.11a\">");
+        xml.append("<xmeld:antwortSuchanfrage><xmeld:auskunft>");
+        xml.append("<xmeld:ergebnisstatus><code>1</code></xmeld:ergebnisstatus>");
+        for (String p : persons) {
+            xml.append(p);
+        }
+        xml.append("</xmeld:auskunft></xmeld:antwortSuchanfrage>");
+        xml.append("</xmeld:datenabruf.freieSuche.antwort.1333>");
+        return xml.toString();
+    }
+
+    private static final String TWO_HITS = response1333(
+        person("Fischer", "Barbara", "1992-02-02", "Hansastraße", "12", "80686", "München"),
+        person("Fischer", "Hans", "1960-05-01", "Hansastraße", "14", "80686", "München"));
+
+    @Test
+    public void testTypedResultAndJsonLayout() {
+        XMeldResult result = new XMeldResponseParser(false).parse(TWO_HITS);
+
+        Assert.assertEquals(XMeldResult.Status.SUCCESS, result.getStatus());
+        Assert.assertEquals(2, result.getTrefferAnzahl());
+        XMeldHit first = result.getTreffer().get(0);
+        Assert.assertEquals("Barbara", first.getVorname());
+        Assert.assertEquals("80686", first.getAdresse().orElseThrow().getPlz());
+
+        JSONObject json = new JSONObject(result.toJson());
+        Assert.assertEquals("SUCCESS", json.getString("status"));
+        Assert.assertEquals(2, json.getInt("trefferAnzahl"));
+        JSONObject hit = json.getJSONArray("treffer").getJSONObject(1);
+        Assert.assertEquals("Hans", hit.getString("vorname"));
+        Assert.assertEquals("1960-05-01", hit.getString("geburtsdatum"));
+        Assert.assertEquals("München", hit.getJSONObject("adresse").getString("ort"));
+        Assert.assertFalse(hit.has("verzogen"));
+        Assert.assertFalse(json.has("rawXml"));
+    }
+
+    @Test
+    public void testRepeatedPlaceNamesAreInterned() {
+        XMeldResult result = new XMeldResponseParser(false).parse(TWO_HITS);
+        XMeldAddress a = result.getTreffer().get(0).getAdresse().orElseThrow();
+        XMeldAddress b = result.getTreffer().get(1).getAdresse().orElseThrow();
+        Assert.assertSame(a.getOrt(), b.getOrt());
+        Assert.assertSame(a.getStrasse(), b.getStrasse());
+    }
+
+    @Test
+    public void testRawXmlIsConfigurable() {
+        JSONObject withRaw = new XMeldResponseParser().parseResponse(TWO_HITS);
+        Assert.assertEquals(TWO_HITS, withRaw.getString("rawXml"));
+
+        ByteBuffer bytes = ByteBuffer.wrap(TWO_HITS.getBytes(StandardCharsets.UTF_8));
+        JSONObject withRawFromBytes = new JSONObject(new XMeldResponseParser(true).parse(bytes).toJson());
+        Assert.assertEquals(TWO_HITS, withRawFromBytes.getString("rawXml"));
+
+        JSONObject withoutRaw = new XMeldResponseParser(false).parseResponse(bytes);
+        Assert.assertFalse(withoutRaw.has("rawXml"));
+    }
+
+    @Test
+    public void testJsonTreeMatchesJsonText() {
+        XMeldResult result = new XMeldResponseParser(true).parse(ByteBuffer.wrap(TWO_HITS.getBytes(StandardCharsets.UTF_8)));
+        JSONObject tree = result.toJSONObject();
+
+        Assert.assertTrue(tree.similar(new JSONObject(result.toJson())));
+        Assert.assertEquals(2, tree.getInt("trefferAnzahl"));
+        Assert.assertEquals(TWO_HITS, tree.getString("rawXml"));
+    }
+
+    @Test
+    public void testErrorResponse() {
+        String xml = "<xmeld:antwort " + NS + " xmlns:xink=\"http://www.osci.de/xinneres/basisnachricht/5\">" +
+                     "<xink:fehlermeldung><code>16</code><text>Strukturfehler \"x\"</text></xink:fehlermeldung>" +
+                     "</xmeld:antwort>";
+        XMeldResult result = new XMeldResponseParser().parse(xml);
+
+        Assert.assertEquals(XMeldResult.Status.ERROR, result.getStatus());
+        JSONObject json = result.toJSONObject();
+        Assert.assertEquals("16", json.getJSONObject("error").getString("code"));
+        Assert.assertEquals("Strukturfehler \"x\"", json.getJSONObject("error").getString("message"));
+        Assert.assertFalse(json.has("treffer"));
+    }
+
+    @Test
+    public void testIdDocumentsAndFlags() {
+        String p = "<xmeld:person><xmeld:nachname><name>Bosch</name></xmeld:nachname>" +
+                   "<xmeld:verzogen>true</xmeld:verzogen>" +
+                   "<xmeld:ausweisdokument><code>PA</code><seriennummer>L01X00T47</seriennummer>" +
+                   "<behoerde>Stadt Bayreuth</behoerde></xmeld:ausweisdokument>" +
+                   "</xmeld:person>";
+        JSONObject hit = new XMeldResponseParser(false).parseResponse(response1333(p))
+                .getJSONArray("treffer").getJSONObject(0);
+
+        Assert.assertTrue(hit.getBoolean("verzogen"));
+        Assert.assertFalse(hit.has("adresse"));
+        JSONArray ausweise = hit.getJSONArray("ausweisdokumente");
+        Assert.assertEquals(1, ausweise.length());
+        Assert.assertEquals("L01X00T47", ausweise.getJSONObject(0).getString("seriennummer"));
+        Assert.assertFalse(ausweise.getJSONObject(0).has("ausstellungsdatum"));
+    }
+
+    @Test
+    public void testParallelParsingKeepsOrderAndContent() {
+        String[] persons = new String[500];
+        for (int i = 0; i < persons.length; i++) {
+            persons[i] = person("Name" + i, "Vorname" + i, "1970-01-01", "Straße " + (i % 7), String.valueOf(i),
+                                "8" + (i % 10) + "000", "Ort" + (i % 3));
+        }
+        String xml = response1333(persons);
+        ByteBuffer bytes = ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            XMeldResponseParser sequential = new XMeldResponseParser(false, Integer.MAX_VALUE, Integer.MAX_VALUE, pool);
+            XMeldResponseParser parallel = new XMeldResponseParser(false, 100, Integer.MAX_VALUE, pool);
+
+            String expected = sequential.parse(bytes).toJson();
+            Assert.assertEquals(expected, parallel.parse(bytes).toJson());
+            Assert.assertEquals(expected, parallel.parse(xml).toJson());
+            Assert.assertEquals("Name499", parallel.parse(bytes).getTreffer().get(499).getNachname());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrefixDeclaredBelowRoot() throws Exception {
+        StringBuilder persons = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            persons.append(person("Name" + i, "Vorname" + i, "1970-01-01", "Hansastraße", String.valueOf(i), "80686", "München")
+                    .replace("<ort>München</ort>", "<xian:ort>München</xian:ort>"));
+        }
+        String xml = response1333(persons.toString())
+                .replace("<xmeld:auskunft>", "<xmeld:auskunft xmlns:xian=\"urn:xoev-de:xinneres\">");
+        ByteBuffer bytes = ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8));
+
+        // Every fragment has to carry the declaration of the intermediate ancestor
+        XMeldPersonChunks chunks = XMeldPersonChunks.split(bytes).orElseThrow();
+        Assert.assertEquals(50, chunks.size());
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.newDocumentBuilder().parse(chunks.source(49));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            XMeldResponseParser parallel = new XMeldResponseParser(false, 10, Integer.MAX_VALUE, pool);
+            XMeldResult result = parallel.parse(bytes);
+            Assert.assertEquals(50, result.getTrefferAnzahl());
+            Assert.assertEquals("München", result.getTreffer().get(49).getAdresse().orElseThrow().getOrt());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testStringWithLatin1DeclarationKeepsUmlauts() {
+        String[] persons = new String[20];
+        Arrays.fill(persons, person("Müller", "Jürgen", "1970-03-12", "Hansastraße", "12", "80686", "München"));
+        String xml = response1333(persons).replace("encoding=\"UTF-8\"", "encoding=\"ISO-8859-1\"");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            XMeldResponseParser parallel = new XMeldResponseParser(false, 5, Integer.MAX_VALUE, pool);
+            XMeldHit hit = parallel.parse(xml).getTreffer().get(19);
+            Assert.assertEquals("Müller", hit.getNachname());
+            Assert.assertEquals("Hansastraße", hit.getAdresse().orElseThrow().getStrasse());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnexpectedLayoutFallsBackToSequentialParse() {
+        // A nested person (e.g. a legal representative) breaks the flat split
+        String nested = person("Fischer", "Barbara", "1992-02-02", "Hansastraße", "12", "80686", "München")
+                .replace("</xmeld:person>", "<xmeld:vertreter>"
+                        + person("Fischer", "Hans", "1960-05-01", "Hansastraße", "14", "80686", "München")
+                        + "</xmeld:vertreter></xmeld:person>");
+        String[] persons = new String[20];
+        Arrays.fill(persons, nested);
+        String xml = response1333(persons);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            XMeldResponseParser sequential = new XMeldResponseParser(false, Integer.MAX_VALUE, Integer.MAX_VALUE, pool);
+            XMeldResponseParser parallel = new XMeldResponseParser(false, 5, Integer.MAX_VALUE, pool);
+
+            Assert.assertEquals(sequential.parse(xml).toJson(), parallel.parse(xml).toJson());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testForeignPersonElementFallsBackToSequentialParse() {
+        String[] persons = new String[20];
+        for (int i = 0; i < persons.length; i++) {
+            persons[i] = person("Fischer", "Barbara" + i, "1992-02-02", "Hansastraße", "12", "80686", "München");
+        }
+        // A person of another vocabulary, which the sequential parse ignores next to XMeld persons
+        String xml = response1333(persons).replace("<xmeld:ergebnisstatus>",
+                "<xian:person xmlns:xian=\"urn:xoev-de:xinneres\"><xian:name>Beh\u00f6rde</xian:name></xian:person>"
+                        + "<xmeld:ergebnisstatus>");
+        ByteBuffer bytes = ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(XMeldPersonChunks.split(bytes).isPresent());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            XMeldResponseParser sequential = new XMeldResponseParser(false, Integer.MAX_VALUE, Integer.MAX_VALUE, pool);
+            XMeldResponseParser parallel = new XMeldResponseParser(false, 5, Integer.MAX_VALUE, pool);
+
+            Assert.assertEquals(20, sequential.parse(bytes).getTrefferAnzahl());
+            Assert.assertEquals(sequential.parse(bytes).toJson(), parallel.parse(bytes).toJson());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSmallResponseStaysOnCallingThread() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        pool.shutdown(); // any attempt to use the pool would be rejected
+        XMeldResponseParser parser = new XMeldResponseParser(false, 100, 1024 * 1024, pool);
+
+        Assert.assertEquals(2, parser.parse(TWO_HITS).getTrefferAnzahl());
+    }
+
+    @Test
+    public void testParallelParsingFallsBackForErrors() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        pool.shutdown();
+        String xml = "<xmeld:antwort " + NS + "><xink:fehlermeldung xmlns:xink=\"urn:x\"><code>16</code>" +
+                     "<text>Fehler</text></xink:fehlermeldung></xmeld:antwort>";
+        XMeldResponseParser parser = new XMeldResponseParser(false, 1, 1, pool);
+
+        Assert.assertEquals(XMeldResult.Status.ERROR, parser.parse(xml).getStatus());
+    }
+}
@@ -0,0 +1,131 @@
+package de.formcycle.baybis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class XMeldResultSessionStoreTest {
+
+    private final MutableClock clock = new MutableClock();
+    private XMeldResultSessionStore store;
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testFollowUpsAreAnsweredFromTheSession() {
+        store = new XMeldResultSessionStore(Duration.ofMinutes(5), 1 << 20, clock, false);
+        XMeldResult result = result(3);
+        XMeldResult ranked = XMeldHitRanker.rank(result,
+                new XMeldSearchCriteria("Müller", "Jürgen 1", "", "", "", ""));
+
+        String token = store.put(ranked);
+
+        Assert.assertTrue(token.matches("[A-Za-z0-9_-]{32}"));
+        Assert.assertEquals(ranked.toJson(), store.get(token).orElseThrow().toJson());
+        Assert.assertEquals(3, store.getHitCount(token).getAsInt());
+
+        List<XMeldHit> detail = store.getHits(token, 1, 1).orElseThrow();
+        Assert.assertEquals(1, detail.size());
+        Assert.assertEquals(ranked.getTreffer().get(1).getId(), detail.get(0).getId());
+        Assert.assertEquals(ranked.getTreffer().get(1).getAusweisdokumente().get(0).getSeriennummer(),
+                detail.get(0).getAusweisdokumente().get(0).getSeriennummer());
+        Assert.assertEquals(1, store.getHits(token, 2, 10).orElseThrow().size());
+        Assert.assertTrue(store.getHits(token, 5, 10).orElseThrow().isEmpty());
+
+        Assert.assertFalse(store.get("unknown").isPresent());
+        Assert.assertNotEquals(token, store.put(result));
+    }
+
+    @Test
+    public void testSessionsExpireAndAreReleased() {
+        store = new XMeldResultSessionStore(Duration.ofMinutes(5), 1 << 20, clock, false);
+        String token = store.put(result(2));
+        Assert.assertTrue(store.getUsedBytes() > 0);
+
+        clock.advance(Duration.ofMinutes(4));
+        Assert.assertTrue(store.get(token).isPresent()); // access does not extend the lifetime
+
+        clock.advance(Duration.ofMinutes(1));
+        store.removeExpired();
+        Assert.assertEquals(0, store.getSessionCount());
+        Assert.assertEquals(0, store.getUsedBytes());
+        Assert.assertFalse(store.get(token).isPresent());
+
+        String invalidated = store.put(result(1));
+        store.invalidate(invalidated);
+        Assert.assertFalse(store.getHitCount(invalidated).isPresent());
+        Assert.assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test
+    public void testCapEvictsLeastRecentlyUsed() {
+        store = new XMeldResultSessionStore(Duration.ofMinutes(5), 1 << 20, clock, false);
+        store.put(result(10));
+        long sessionBytes = store.getUsedBytes();
+        store.close();
+
+        store = new XMeldResultSessionStore(Duration.ofMinutes(5), 2 * sessionBytes + 10, clock, false);
+        String first = store.put(result(10));
+        String second = store.put(result(10));
+        store.get(first); // second is now the least recently used
+        String third = store.put(result(10));
+
+        Assert.assertTrue(store.get(first).isPresent());
+        Assert.assertFalse(store.get(second).isPresent());
+        Assert.assertTrue(store.get(third).isPresent());
+        Assert.assertTrue(store.getUsedBytes() <= 2 * sessionBytes + 10);
+
+        try {
+            store.put(result(100));
+            Assert.fail("Expected SESSION_TOO_LARGE");
+        } catch (BayBisConnectorException e) {
+            Assert.assertEquals("SESSION_TOO_LARGE", e.getErrorCode());
+        }
+    }
+
+    private static XMeldResult result(int size) {
+        List<XMeldHit> hits = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            hits.add(new XMeldHit(String.valueOf(20_000_000 + i), "Müller", "Jürgen " + i, "", "1970-03-1" + (i % 10),
+                    "m", i % 2 == 0 ? new XMeldAddress("Hansastraße", String.valueOf(i), "80686", "München") : null,
+                    i == 1, false, List.of(new XMeldIdDocument("PA", "L01X00T4" + i, "2031-01-01", "Behörde " + i, ""))));
+        }
+        return XMeldResult.success(hits, null, null);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2026-03-02T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
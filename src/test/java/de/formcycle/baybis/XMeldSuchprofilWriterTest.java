@@ -0,0 +1,52 @@
+package de.formcycle.baybis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class XMeldSuchprofilWriterTest {
+
+    @Test
+    public void testWrittenProfileReadsBack() {
+        byte[] request = request("Müller & Söhne", "Hans Peter", "80686", "Hansastraße", "12", "München", "1970-03");
+
+        XMeldSearchCriteria criteria = XMeldSearchCriteria.fromRequest(request);
+
+        Assert.assertEquals("Müller & Söhne", criteria.getNachname());
+        Assert.assertEquals("Hans Peter", criteria.getVorname());
+        Assert.assertEquals("1970-03", criteria.getGeburtsdatum());
+        Assert.assertEquals("80686", criteria.getPlz());
+        Assert.assertEquals("München", criteria.getOrt());
+        Assert.assertEquals("Hansastraße", criteria.getStrasse());
+    }
+
+    @Test
+    public void testSchemaOrderAndEmptyValues() {
+        StringBuilder xml = new StringBuilder();
+        XMeldSuchprofilWriter.write(xml, "Fischer", "Barbara", "80686", "", "12", "", "");
+        String profile = xml.toString();
+
+        // vornamen before nachname and hausnummer before postleitzahl, as in the XSD
+        Assert.assertTrue(profile.indexOf("<xmeld:vornamen>") < profile.indexOf("<xmeld:nachname>"));
+        Assert.assertTrue(profile.indexOf("<xmeld:hausnummerOderHausnummernbereich>") < profile.indexOf("<postleitzahl>"));
+        Assert.assertFalse(profile.contains("strasse"));
+        Assert.assertFalse(profile.contains("geburtsdaten"));
+
+        xml.setLength(0);
+        XMeldSuchprofilWriter.write(xml, "Fischer", "", "", "", "", "", "");
+        Assert.assertFalse(xml.toString().contains("wohnung"));
+        Assert.assertFalse(xml.toString().contains("vornamen"));
+    }
+
+    private static byte[] request(String nachname, String vorname, String plz, String strasse,
+                                  String hausnummer, String ort, String geburtsdatum) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<xmeld:").append(XMeldSchema.MESSAGE_1332)
+           .append(" xmlns:xmeld=\"").append(XMeldSchema.NAMESPACE).append("\" version=\"")
+           .append(XMeldSchema.VERSION).append("\">");
+        XMeldSuchprofilWriter.write(xml, nachname, vorname, plz, strasse, hausnummer, ort, geburtsdatum);
+        xml.append("</xmeld:").append(XMeldSchema.MESSAGE_1332).append(">");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,789 @@
+package de.formcycle.baybis.codegen;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the XMeld extractor and writer classes of the connector from the XMeld XSDs.
+ *
+ * <p>The bindings file names the messages, records (elements whose descendants are extracted,
+ * e.g. {@code person}) and fields the connector uses. Every path is resolved against the schemas;
+ * a path that no longer exists after a schema update fails the build instead of silently yielding
+ * empty values. Paths are resolved as far as the XMeld schemas reach: below elements typed by
+ * imported XInneres schemas (not part of {@code spec/doc}) the remaining steps are taken as given.</p>
+ *
+ * <p>The generated code walks the DOM once per record with a {@code switch} on the local name, no
+ * reflection and no binding runtime. Uses only the JDK, so the build can run it as a single-file
+ * program: {@code java XMeldCodegen.java <schemaDir> <bindings> <outputDir>}.</p>
+ */
+public final class XMeldCodegen {
+
+    private static final String XS = XMLConstants.W3C_XML_SCHEMA_NS_URI;
+    private static final String TARGET_PACKAGE = "de.formcycle.baybis";
+    private static final Pattern CONSTANT_APPEND = Pattern.compile("( *)xml\\.append\\(\"([^\"]*)\"\\);");
+
+    private final Schemas schemas;
+    private final String bindingsName;
+    private final Map<String, String> messages = new LinkedHashMap<>();
+    private final List<Record> records = new ArrayList<>();
+    private final List<Writer> writers = new ArrayList<>();
+
+    XMeldCodegen(Schemas schemas, String bindingsName) {
+        this.schemas = schemas;
+        this.bindingsName = bindingsName;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: XMeldCodegen <schemaDir> <bindings> <outputDir>");
+            System.exit(2);
+        }
+        Path outputDir = Paths.get(args[2]).resolve(TARGET_PACKAGE.replace('.', '/'));
+        try {
+            XMeldCodegen codegen = new XMeldCodegen(Schemas.load(Paths.get(args[0])),
+                    Paths.get(args[1]).getFileName().toString());
+            codegen.readBindings(Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8));
+            Map<String, String> sources = codegen.generate();
+            Files.createDirectories(outputDir);
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                writeIfChanged(outputDir.resolve(source.getKey() + ".java"), source.getValue());
+            }
+            System.out.println("XMeldCodegen: " + sources.size() + " classes for XMeld " + codegen.schemas.version
+                    + " in " + outputDir);
+        } catch (CodegenException e) {
+            System.err.println("XMeldCodegen: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Keeps the timestamps of unchanged sources, so the compiler does not rebuild them
+    private static void writeIfChanged(Path file, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(file) && Arrays.equals(Files.readAllBytes(file), bytes)) {
+            return;
+        }
+        Files.write(file, bytes);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Bindings
+    // ---------------------------------------------------------------------------------------------
+
+    void readBindings(List<String> lines) {
+        Record record = null;
+        Writer writer = null;
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            String where = bindingsName + ":" + (n + 1);
+            switch (parts[0]) {
+                case "message":
+                    expect(parts, 3, where);
+                    if (schemas.element(parts[2]) == null) {
+                        throw new CodegenException(where + ": message element " + parts[2] + " not found in the schemas");
+                    }
+                    messages.put(parts[1], parts[2]);
+                    break;
+                case "record":
+                    expect(parts, 4, where);
+                    record = new Record(parts[1], resolveAnchors(parts[2], parts[3], where));
+                    writer = null;
+                    records.add(record);
+                    break;
+                case "writer":
+                    expect(parts, 4, where);
+                    writer = new Writer(parts[1], resolveAnchors(parts[2], parts[3], where).get(0));
+                    record = null;
+                    writers.add(writer);
+                    break;
+                case "field":
+                case "list":
+                    boolean unchecked = parts.length == 4 && parts[3].equals("unchecked");
+                    if (!unchecked) {
+                        expect(parts, 3, where);
+                    }
+                    if (record == null) {
+                        throw new CodegenException(where + ": " + parts[0] + " outside of a record");
+                    }
+                    for (Decl anchor : unchecked ? List.<Decl>of() : record.anchors) {
+                        resolve(anchor, parts[2], where);
+                    }
+                    record.add(new Field(parts[1], parts[2], parts[0].equals("list")), where);
+                    break;
+                case "param":
+                    expect(parts, 3, where);
+                    if (writer == null) {
+                        throw new CodegenException(where + ": param outside of a writer");
+                    }
+                    if (parts[2].contains("//")) {
+                        throw new CodegenException(where + ": writer paths must name every step");
+                    }
+                    writer.params.add(parts[1]);
+                    writer.root.insert(resolve(writer.anchor, parts[2], where), parts[1]);
+                    break;
+                default:
+                    throw new CodegenException(where + ": unknown binding " + parts[0]);
+            }
+        }
+    }
+
+    private static void expect(String[] parts, int count, String where) {
+        if (parts.length != count) {
+            throw new CodegenException(where + ": expected " + count + " tokens");
+        }
+    }
+
+    // "1331,1333" + "//person": the anchor element in each message
+    private List<Decl> resolveAnchors(String messageCodes, String path, String where) {
+        List<Decl> anchors = new ArrayList<>();
+        for (String code : messageCodes.split(",")) {
+            String message = messages.get(code);
+            if (message == null) {
+                throw new CodegenException(where + ": message " + code + " is not declared");
+            }
+            List<Step> steps = resolve(schemas.declOf(schemas.element(message)), path, where);
+            Step last = steps.get(steps.size() - 1);
+            if (last.decl == null) {
+                throw new CodegenException(where + ": anchor " + path + " must be an XMeld element");
+            }
+            anchors.add(last.decl);
+        }
+        return anchors;
+    }
+
+    /**
+     * Resolves {@code a/b//c} below {@code from}: {@code /} is a child step, {@code //} any depth.
+     *
+     * @return One step per path segment; steps below an imported type have no declaration.
+     */
+    List<Step> resolve(Decl from, String path, String where) {
+        List<Step> steps = new ArrayList<>();
+        Decl current = from;
+        boolean deep = path.startsWith("//");
+        for (String name : (deep ? path.substring(2) : path).split("/", -1)) {
+            if (name.isEmpty()) {
+                deep = true;
+                continue;
+            }
+            if (current == null || current.external) {
+                steps.add(new Step(name, null));
+            } else {
+                Decl next = deep ? schemas.findDescendant(current, name) : schemas.findChild(current, name);
+                if (next == null) {
+                    throw new CodegenException(where + ": no element " + name + (deep ? " below " : " in ")
+                            + current.name + " (" + path + ")");
+                }
+                steps.add(new Step(name, next));
+                current = next;
+            }
+            deep = false;
+        }
+        return steps;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Generation
+    // ---------------------------------------------------------------------------------------------
+
+    Map<String, String> generate() {
+        Map<String, String> sources = new TreeMap<>();
+        sources.put("XMeldSchema", generateSchema());
+        for (Record record : records) {
+            sources.put(record.className, generateRecord(record));
+        }
+        for (Writer writer : writers) {
+            sources.put(writer.className, generateWriter(writer));
+        }
+        return sources;
+    }
+
+    private String header() {
+        return "// Generated by XMeldCodegen from spec/doc (XMeld " + schemas.version + ") and " + bindingsName
+                + ". Do not edit.\n"
+                + "package " + TARGET_PACKAGE + ";\n\n";
+    }
+
+    private String generateSchema() {
+        StringBuilder out = new StringBuilder(header());
+        out.append("/**\n")
+           .append(" * Namespace, version and root elements of the XMeld messages used by the connector.\n")
+           .append(" */\n")
+           .append("final class XMeldSchema {\n\n")
+           .append("    static final String NAMESPACE = ").append(literal(schemas.targetNamespace)).append(";\n")
+           .append("    static final String VERSION = ").append(literal(schemas.version)).append(";\n");
+        for (Map.Entry<String, String> message : messages.entrySet()) {
+            out.append("    static final String MESSAGE_").append(message.getKey()).append(" = ")
+               .append(literal(message.getValue())).append(";\n");
+        }
+        out.append("\n    private XMeldSchema() {\n    }\n}\n");
+        return out.toString();
+    }
+
+    private String generateRecord(Record record) {
+        List<Field> scalars = new ArrayList<>();
+        List<Field> lists = new ArrayList<>();
+        for (Field field : record.fields) {
+            (field.list ? lists : scalars).add(field);
+        }
+        StringBuilder out = new StringBuilder(header());
+        out.append("import org.w3c.dom.Element;\n")
+           .append("import org.w3c.dom.Node;\n\n");
+        if (!lists.isEmpty()) {
+            out.append("import java.util.List;\n\n");
+        }
+        out.append("/**\n")
+           .append(" * Extracts the fields of one {@code ").append(record.anchors.get(0).name).append("} element in a single pass over\n")
+           .append(" * its subtree. Each field is the trimmed text of the first descendant with that local name,\n")
+           .append(" * {@code \"\"} if there is none.\n")
+           .append(" */\n")
+           .append("final class ").append(record.className).append(" {\n\n");
+        for (int i = 0; i < scalars.size(); i++) {
+            out.append("    /** {@code ").append(scalars.get(i).path).append("} */\n")
+               .append("    static final int ").append(scalars.get(i).name).append(" = ").append(i).append(";\n");
+        }
+        out.append("    static final int FIELD_COUNT = ").append(scalars.size()).append(";\n\n")
+           .append("    private ").append(record.className).append("() {\n    }\n\n");
+
+        out.append("    /**\n")
+           .append("     * @param values Receives the fields, indexed by the constants of this class.\n");
+        for (Field list : lists) {
+            out.append("     * @param ").append(javaName(list.name)).append(" Receives every {@code ")
+               .append(list.path).append("} element.\n");
+        }
+        out.append("     */\n")
+           .append("    static void extract(Element record, String[] values");
+        for (Field list : lists) {
+            out.append(", List<Element> ").append(javaName(list.name));
+        }
+        out.append(") {\n")
+           .append("        int found = 0;\n")
+           .append("        Node node = record.getFirstChild();\n")
+           .append("        while (node != null) {\n")
+           .append("            if (node.getNodeType() == Node.ELEMENT_NODE) {\n")
+           .append("                switch (localName(node)) {\n");
+        for (Field field : record.fields) {
+            out.append("                    case ").append(literal(field.localName())).append(":\n");
+            if (field.list) {
+                out.append("                        ").append(javaName(field.name)).append(".add((Element) node);\n");
+            } else {
+                out.append("                        if (values[").append(field.name).append("] == null) {\n")
+                   .append("                            values[").append(field.name).append("] = node.getTextContent().trim();\n")
+                   .append("                            found++;\n")
+                   .append("                        }\n");
+            }
+            out.append("                        break;\n");
+        }
+        out.append("                    default:\n")
+           .append("                        break;\n")
+           .append("                }\n");
+        if (lists.isEmpty()) {
+            out.append("                if (found == FIELD_COUNT) {\n")
+               .append("                    return;\n")
+               .append("                }\n");
+        }
+        out.append("                if (node.getFirstChild() != null) {\n")
+           .append("                    node = node.getFirstChild();\n")
+           .append("                    continue;\n")
+           .append("                }\n")
+           .append("            }\n")
+           .append("            while (node != record && node.getNextSibling() == null) {\n")
+           .append("                node = node.getParentNode();\n")
+           .append("            }\n")
+           .append("            node = node == record ? null : node.getNextSibling();\n")
+           .append("        }\n")
+           .append("        for (int i = 0; i < FIELD_COUNT; i++) {\n")
+           .append("            if (values[i] == null) {\n")
+           .append("                values[i] = \"\";\n")
+           .append("            }\n")
+           .append("        }\n")
+           .append("    }\n\n")
+           .append("    private static String localName(Node node) {\n")
+           .append("        String name = node.getLocalName();\n")
+           .append("        return name != null ? name : node.getNodeName();\n")
+           .append("    }\n")
+           .append("}\n");
+        return out.toString();
+    }
+
+    private String generateWriter(Writer writer) {
+        StringBuilder out = new StringBuilder(header());
+        out.append("/**\n")
+           .append(" * Writes the {@code ").append(writer.anchor.name).append("} element, children in schema order.\n")
+           .append(" * Empty values are left out together with the elements that would only wrap them.\n")
+           .append(" * XMeld elements use the {@code xmeld} prefix, which the enclosing message has to declare.\n")
+           .append(" */\n")
+           .append("final class ").append(writer.className).append(" {\n\n")
+           .append("    private ").append(writer.className).append("() {\n    }\n\n")
+           .append("    static void write(StringBuilder xml");
+        for (String param : writer.params) {
+            out.append(", String ").append(javaName(param));
+        }
+        out.append(") {\n");
+        writer.root.sortChildren();
+        StringBuilder body = new StringBuilder();
+        writeNode(body, writer.root, "        ");
+        out.append(mergeAppends(body.toString()))
+           .append("    }\n\n")
+           .append("    private static void text(StringBuilder xml, String value) {\n")
+           .append("        for (int i = 0; i < value.length(); i++) {\n")
+           .append("            char c = value.charAt(i);\n")
+           .append("            switch (c) {\n")
+           .append("                case '&': xml.append(\"&amp;\"); break;\n")
+           .append("                case '<': xml.append(\"&lt;\"); break;\n")
+           .append("                case '>': xml.append(\"&gt;\"); break;\n")
+           .append("                default: xml.append(c); break;\n")
+           .append("            }\n")
+           .append("        }\n")
+           .append("    }\n")
+           .append("}\n");
+        return out.toString();
+    }
+
+    private void writeNode(StringBuilder out, TagNode node, String indent) {
+        String tag = node.qualified ? "xmeld:" + node.name : node.name;
+        out.append(indent).append("xml.append(\"<").append(tag).append(">\");\n");
+        if (node.param != null) {
+            out.append(indent).append("text(xml, ").append(javaName(node.param)).append(");\n");
+        }
+        for (TagNode child : node.children) {
+            // Only elements wrapping fewer values than their parent need their own check
+            List<String> params = child.params();
+            if (params.size() == node.params().size()) {
+                writeNode(out, child, indent);
+                continue;
+            }
+            out.append(indent).append("if (");
+            for (int i = 0; i < params.size(); i++) {
+                out.append(i > 0 ? " || " : "").append("!").append(javaName(params.get(i))).append(".isEmpty()");
+            }
+            out.append(") {\n");
+            writeNode(out, child, indent + "    ");
+            out.append(indent).append("}\n");
+        }
+        out.append(indent).append("xml.append(\"</").append(tag).append(">\");\n");
+    }
+
+    // Consecutive constant appends at the same level become one: "<a><b>" instead of "<a>", "<b>"
+    static String mergeAppends(String code) {
+        StringBuilder merged = new StringBuilder();
+        String pendingIndent = null;
+        StringBuilder pending = new StringBuilder();
+        for (String line : code.split("\n")) {
+            Matcher matcher = CONSTANT_APPEND.matcher(line);
+            if (matcher.matches() && matcher.group(1).equals(pendingIndent)) {
+                pending.append(matcher.group(2));
+                continue;
+            }
+            if (pendingIndent != null) {
+                merged.append(pendingIndent).append("xml.append(\"").append(pending).append("\");\n");
+                pendingIndent = null;
+            }
+            if (matcher.matches()) {
+                pendingIndent = matcher.group(1);
+                pending.setLength(0);
+                pending.append(matcher.group(2));
+            } else {
+                merged.append(line).append('\n');
+            }
+        }
+        if (pendingIndent != null) {
+            merged.append(pendingIndent).append("xml.append(\"").append(pending).append("\");\n");
+        }
+        return merged.toString();
+    }
+
+    // NACHNAME -> nachname, GEBURTS_DATUM -> geburtsDatum
+    static String javaName(String constant) {
+        StringBuilder name = new StringBuilder();
+        boolean upper = false;
+        for (char c : constant.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Model
+    // ---------------------------------------------------------------------------------------------
+
+    static final class CodegenException extends RuntimeException {
+        CodegenException(String message) {
+            super(message);
+        }
+    }
+
+    static final class Record {
+        final String className;
+        final List<Decl> anchors;
+        final List<Field> fields = new ArrayList<>();
+
+        Record(String className, List<Decl> anchors) {
+            this.className = className;
+            this.anchors = anchors;
+        }
+
+        void add(Field field, String where) {
+            for (Field other : fields) {
+                if (other.name.equals(field.name) || other.localName().equals(field.localName())) {
+                    throw new CodegenException(where + ": " + field.name + " clashes with " + other.name);
+                }
+            }
+            fields.add(field);
+        }
+    }
+
+    static final class Field {
+        final String name;
+        final String path;
+        final boolean list;
+
+        Field(String name, String path, boolean list) {
+            this.name = name;
+            this.path = path;
+            this.list = list;
+        }
+
+        String localName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+    }
+
+    static final class Writer {
+        final String className;
+        final Decl anchor;
+        final List<String> params = new ArrayList<>();
+        final TagNode root;
+
+        Writer(String className, Decl anchor) {
+            this.className = className;
+            this.anchor = anchor;
+            this.root = new TagNode(anchor.name, true, 0);
+        }
+    }
+
+    /**
+     * Element of a writer, with the position of its declaration in the parent's content model.
+     */
+    static final class TagNode {
+        final String name;
+        final boolean qualified;
+        final int order;
+        final List<TagNode> children = new ArrayList<>();
+        String param;
+
+        TagNode(String name, boolean qualified, int order) {
+            this.name = name;
+            this.qualified = qualified;
+            this.order = order;
+        }
+
+        void insert(List<Step> steps, String param) {
+            TagNode node = this;
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = steps.get(i);
+                TagNode child = null;
+                for (TagNode existing : node.children) {
+                    if (existing.name.equals(step.name)) {
+                        child = existing;
+                    }
+                }
+                if (child == null) {
+                    // Below imported types the order is the one of the bindings
+                    child = step.decl != null
+                            ? new TagNode(step.name, step.decl.qualified, step.decl.order)
+                            : new TagNode(step.name, false, Integer.MAX_VALUE);
+                    node.children.add(child);
+                }
+                node = child;
+            }
+            node.param = param;
+        }
+
+        void sortChildren() {
+            children.sort((a, b) -> Integer.compare(a.order, b.order));
+            children.forEach(TagNode::sortChildren);
+        }
+
+        List<String> params() {
+            List<String> params = new ArrayList<>();
+            if (param != null) {
+                params.add(param);
+            }
+            children.forEach(child -> params.addAll(child.params()));
+            return params;
+        }
+    }
+
+    static final class Step {
+        final String name;
+        final Decl decl;
+
+        Step(String name, Decl decl) {
+            this.name = name;
+            this.decl = decl;
+        }
+    }
+
+    /**
+     * Element declaration. {@code type} is the complex type defining its content, null for simple
+     * content and for types of imported schemas ({@code external}).
+     */
+    static final class Decl {
+        final String name;
+        final boolean qualified;
+        final Element type;
+        final boolean external;
+        final int order;
+
+        Decl(String name, boolean qualified, Element type, boolean external, int order) {
+            this.name = name;
+            this.qualified = qualified;
+            this.type = type;
+            this.external = external;
+            this.order = order;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Schemas
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The XMeld schemas of one target namespace, indexed by global name. Imported schemas are not
+     * loaded; their types are opaque.
+     */
+    static final class Schemas {
+        final String targetNamespace;
+        final String version;
+        private final Map<String, Element> elements = new HashMap<>();
+        private final Map<String, Element> complexTypes = new HashMap<>();
+        private final Map<String, Element> groups = new HashMap<>();
+        private final Map<Element, List<Decl>> childCache = new HashMap<>();
+
+        private Schemas(String targetNamespace, String version) {
+            this.targetNamespace = targetNamespace;
+            this.version = version;
+        }
+
+        static Schemas load(Path dir) throws Exception {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            List<Element> roots = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "xmeld-*.xsd")) {
+                for (Path file : files) {
+                    Document doc = factory.newDocumentBuilder().parse(file.toFile());
+                    roots.add(doc.getDocumentElement());
+                }
+            }
+            if (roots.isEmpty()) {
+                throw new CodegenException("no xmeld-*.xsd in " + dir);
+            }
+            Schemas schemas = new Schemas(roots.get(0).getAttribute("targetNamespace"),
+                    roots.get(0).getAttribute("version"));
+            for (Element root : roots) {
+                if (!schemas.targetNamespace.equals(root.getAttribute("targetNamespace"))
+                        || !schemas.version.equals(root.getAttribute("version"))) {
+                    throw new CodegenException("mixed schema versions in " + dir);
+                }
+                for (Element global : children(root)) {
+                    String name = global.getAttribute("name");
+                    switch (global.getLocalName()) {
+                        case "element": schemas.elements.put(name, global); break;
+                        case "complexType": schemas.complexTypes.put(name, global); break;
+                        case "group": schemas.groups.put(name, global); break;
+                        default: break;
+                    }
+                }
+            }
+            return schemas;
+        }
+
+        Element element(String name) {
+            return elements.get(name);
+        }
+
+        Decl declOf(Element element) {
+            return declare(element, 0);
+        }
+
+        Decl findChild(Decl parent, String name) {
+            for (Decl child : children(parent)) {
+                if (child.name.equals(name)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        // Breadth first, so the shallowest declaration wins; recursive types are visited once
+        Decl findDescendant(Decl parent, String name) {
+            Deque<Decl> queue = new ArrayDeque<>(List.of(parent));
+            Set<Element> visited = new HashSet<>();
+            while (!queue.isEmpty()) {
+                for (Decl child : children(queue.poll())) {
+                    if (child.name.equals(name)) {
+                        return child;
+                    }
+                    if (child.type != null && visited.add(child.type)) {
+                        queue.add(child);
+                    }
+                }
+            }
+            return null;
+        }
+
+        List<Decl> children(Decl decl) {
+            if (decl.type == null) {
+                return List.of();
+            }
+            return childCache.computeIfAbsent(decl.type, type -> {
+                List<Decl> result = new ArrayList<>();
+                collectContent(type, result);
+                return result;
+            });
+        }
+
+        private void collectContent(Element complexType, List<Decl> out) {
+            for (Element child : children(complexType)) {
+                switch (child.getLocalName()) {
+                    case "complexContent":
+                        for (Element derivation : children(child)) {
+                            if (derivation.getLocalName().equals("extension")) {
+                                Element base = complexTypes.get(localPart(derivation, "base"));
+                                if (base != null && isTarget(derivation, "base")) {
+                                    collectContent(base, out);
+                                }
+                            }
+                            collectParticles(derivation, out);
+                        }
+                        break;
+                    case "sequence":
+                    case "choice":
+                    case "all":
+                    case "group":
+                        collectParticle(child, out);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private void collectParticles(Element parent, List<Decl> out) {
+            for (Element particle : children(parent)) {
+                collectParticle(particle, out);
+            }
+        }
+
+        private void collectParticle(Element particle, List<Decl> out) {
+            switch (particle.getLocalName()) {
+                case "element":
+                    out.add(declare(particle, out.size()));
+                    break;
+                case "sequence":
+                case "choice":
+                case "all":
+                    collectParticles(particle, out);
+                    break;
+                case "group":
+                    Element group = groups.get(localPart(particle, "ref"));
+                    if (group != null) {
+                        collectParticles(group, out);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private Decl declare(Element element, int order) {
+            if (element.hasAttribute("ref")) {
+                Element global = isTarget(element, "ref") ? elements.get(localPart(element, "ref")) : null;
+                if (global == null) {
+                    return new Decl(localPart(element, "ref"), false, null, true, order);
+                }
+                element = global;
+            }
+            boolean global = element.getParentNode() == element.getOwnerDocument().getDocumentElement();
+            String form = element.hasAttribute("form")
+                    ? element.getAttribute("form")
+                    : element.getOwnerDocument().getDocumentElement().getAttribute("elementFormDefault");
+            boolean qualified = global || "qualified".equals(form);
+            String name = element.getAttribute("name");
+            for (Element child : children(element)) {
+                if (child.getLocalName().equals("complexType")) {
+                    return new Decl(name, qualified, child, false, order);
+                }
+            }
+            if (!element.hasAttribute("type")) {
+                return new Decl(name, qualified, null, false, order);
+            }
+            if (isTarget(element, "type")) {
+                return new Decl(name, qualified, complexTypes.get(localPart(element, "type")), false, order);
+            }
+            String namespace = namespaceOf(element, "type");
+            return new Decl(name, qualified, null, !XS.equals(namespace), order);
+        }
+
+        private boolean isTarget(Element element, String attribute) {
+            return targetNamespace.equals(namespaceOf(element, attribute));
+        }
+
+        private static String namespaceOf(Element element, String attribute) {
+            String value = element.getAttribute(attribute);
+            int colon = value.indexOf(':');
+            return element.lookupNamespaceURI(colon < 0 ? null : value.substring(0, colon));
+        }
+
+        private static String localPart(Element element, String attribute) {
+            String value = element.getAttribute(attribute);
+            return value.substring(value.indexOf(':') + 1);
+        }
+
+        private static List<Element> children(Element parent) {
+            List<Element> children = new ArrayList<>();
+            for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node.getNodeType() == Node.ELEMENT_NODE && XS.equals(node.getNamespaceURI())) {
+                    children.add((Element) node);
+                }
+            }
+            return children;
+        }
+    }
+}